@@ -7,34 +7,65 @@ import com.alerts.alertFactories.BloodOxygenAlertFactory;
 import com.alerts.alertFactories.BloodPressureAlertFactory;
 import com.alerts.alertFactories.DefaultAlertFactory;
 import com.alerts.alertFactories.ECGAlertFactory;
+import com.alerts.windows.PatientStates;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
+import com.data_management.SampleListener;
 
 /**
  * The {@code AlertGenerator} class is responsible for monitoring patient data
  * and generating alerts when certain predefined conditions are met. This class
  * relies on a {@link DataStorage} instance to access patient data and evaluate
  * it against specific health criteria.
+ * <p>
+ * Besides re-evaluating a patient's whole history with
+ * {@link #evaluateData(Patient)}, the generator can evaluate incrementally so
+ * that every record goes through the strategies exactly once and the cost
+ * follows the new data only. Records can be pushed in as they are stored, by
+ * registering the generator with
+ * {@link DataStorage#addSampleListener(SampleListener)}, or pulled with
+ * {@link #evaluateNewData(Patient)}, which picks up where the previous call
+ * left off. A generator does one or the other: the first incremental call
+ * fixes its mode, and calls of the other kind are rejected, because a record
+ * can be stored and pulled before its push arrives.
+ * <p>
+ * Pulls keep a per-patient watermark: the latest evaluated timestamp and how
+ * many records of each type at that timestamp were evaluated. Records that
+ * arrive with a timestamp below the watermark cannot be evaluated any more,
+ * because the strategies' windows have moved past their time; they are
+ * counted instead, see {@link #getSkippedRecordCount()}. Pushed records are
+ * evaluated whenever they arrive.
+ * <p>
+ * Thresholds and correlation rules come from an {@link AlertRules} snapshot,
+ * which can be replaced with {@link #setRules(AlertRules)} at any time, for
+ * example by an {@link AlertRulesReloader} watching a configuration file.
  */
-public class AlertGenerator {
+public class AlertGenerator implements SampleListener {
 
     private AlertFactory bloodPressureFactory = new BloodPressureAlertFactory();
     private AlertFactory bloodOxygenFactory = new BloodOxygenAlertFactory();
     private AlertFactory ecgFactory = new ECGAlertFactory();
     private AlertFactory defaultFactory = new DefaultAlertFactory();
 
-    private final Map<String, AlertStrategy> strategyMap = new HashMap<>();
+    // Dispatch table indexed by RecordTypes id; types without a strategy map to null
+    private final AlertStrategy[] strategyTable = new AlertStrategy[RecordTypes.MANUAL_ALERT + 1];
     {
         BloodPressureStrategy bpStrategy = new BloodPressureStrategy();
-        strategyMap.put("SystolicPressure", bpStrategy);
-        strategyMap.put("DiastolicPressure", bpStrategy);
-        strategyMap.put("OxygenSaturation", new OxygenSaturationStrategy());
-        strategyMap.put("ECG", new HeartRateStrategy());
+        strategyTable[RecordTypes.SYSTOLIC_PRESSURE] = bpStrategy;
+        strategyTable[RecordTypes.DIASTOLIC_PRESSURE] = bpStrategy;
+        strategyTable[RecordTypes.OXYGEN_SATURATION] = new OxygenSaturationStrategy();
+        strategyTable[RecordTypes.ECG] = new HeartRateStrategy();
     }
 
+    private final CorrelationEngine correlationEngine;
+    private volatile AlertRules rules;
     private DataStorage dataStorage;
-    private List<Alert> triggeredAlerts = new ArrayList<>();
+    private final List<Alert> triggeredAlerts;
+    private final PatientStates<Watermark> watermarks = new PatientStates<>(id -> new Watermark());
+    private Mode mode; // fixed by the first incremental call, null before
+    private long skippedRecords;
 
     /**
      * Constructs an {@code AlertGenerator} with a specified {@code DataStorage}.
@@ -44,7 +75,66 @@ public class AlertGenerator {
      * @param dataStorage the data storage system that provides access to patient data
      */
     public AlertGenerator(DataStorage dataStorage) {
+        this(dataStorage, AlertRules.defaults(), new ArrayList<>());
+    }
+
+    /**
+     * Constructs an {@code AlertGenerator} that evaluates the given composite
+     * rules in addition to the per-signal strategies.
+     *
+     * @param dataStorage      the data storage system that provides access to patient data
+     * @param correlationRules the rules over pairs of signals, see {@link CorrelationRule#defaults()}
+     */
+    public AlertGenerator(DataStorage dataStorage, List<CorrelationRule> correlationRules) {
+        this(dataStorage, correlationRules, new ArrayList<>());
+    }
+
+    /**
+     * Constructs an {@code AlertGenerator} that adds its alerts to the given
+     * list, which may be shared with other generators if it is thread-safe.
+     *
+     * @param dataStorage      the data storage system that provides access to patient data
+     * @param correlationRules the rules over pairs of signals
+     * @param alertSink        the list that receives the triggered alerts
+     */
+    public AlertGenerator(DataStorage dataStorage, List<CorrelationRule> correlationRules, List<Alert> alertSink) {
+        this(dataStorage, AlertRules.defaults().withCorrelationRules(correlationRules), alertSink);
+    }
+
+    /**
+     * Constructs an {@code AlertGenerator} that evaluates the given rules,
+     * for example ones loaded with {@link AlertRules#load}.
+     *
+     * @param dataStorage the data storage system that provides access to patient data
+     * @param rules       the thresholds and correlation rules
+     * @param alertSink   the list that receives the triggered alerts
+     */
+    public AlertGenerator(DataStorage dataStorage, AlertRules rules, List<Alert> alertSink) {
         this.dataStorage = dataStorage;
+        this.rules = rules;
+        this.correlationEngine = new CorrelationEngine();
+        this.triggeredAlerts = alertSink;
+    }
+
+    /**
+     * Replaces the rules while evaluation goes on. The swap is atomic: every
+     * record is evaluated entirely against either the old or the new rules.
+     * The strategies' windows and the correlation engine's latest readings
+     * are kept, so nothing needs to be re-evaluated.
+     *
+     * @param rules the rules to evaluate from now on
+     */
+    public void setRules(AlertRules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Returns the rules currently in use.
+     *
+     * @return the latest rules passed to the constructor or {@link #setRules}
+     */
+    public AlertRules getRules() {
+        return rules;
     }
 
     /**
@@ -54,54 +144,114 @@ public class AlertGenerator {
      *
      * @param patient the patient data to evaluate for alert conditions
      */
-    public void evaluateData(Patient patient) {
-        List<PatientRecord> records = patient.getRecords(0, Long.MAX_VALUE);
-        records.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
+    public synchronized void evaluateData(Patient patient) {
+        List<PatientRecord> records = patient.getRecords(0, Long.MAX_VALUE); // already in timestamp order
 
-        for (PatientRecord record : records) {
-            AlertStrategy strategy = strategyMap.get(record.getRecordType());
+        // a full pass replays the history, so start the windows from scratch
+        for (AlertStrategy strategy : strategyTable) {
             if (strategy != null) {
-                strategy.checkAlert(record, patient, triggeredAlerts);
+                strategy.resetPatient(patient.getPatientId());
             }
+        }
+        correlationEngine.resetPatient(patient.getPatientId());
 
-            evaluateManual(patient, record);
-            evaluateCombined(patient, record);
+        for (PatientRecord record : records) {
+            evaluate(patient, record);
         }
     }
 
     /**
-     * Helper method to evaluate manual alert types.
+     * Evaluates only the records of the patient that were not evaluated yet
+     * by this method, in timestamp order.
+     *
+     * @param patient the patient whose new data to evaluate
+     * @throws IllegalStateException if the generator evaluates pushed samples
      */
-    private void evaluateManual(Patient patient, PatientRecord record) {
-        String type = record.getRecordType();
-        if (type.equals("Alert") || type.equals("ManualAlert")) {
-            Alert base = defaultFactory.createAlert(
-                String.valueOf(patient.getPatientId()),
-                "Manual Alert Triggered",
-                record.getTimestamp()
-            );
-            triggerAlert(new PriorityAlertDecorator(new RepeatedAlertDecorator(base, 2)));
+    public synchronized void evaluateNewData(Patient patient) {
+        enterMode(Mode.PULL);
+        Watermark watermark = watermarks.get(patient.getPatientId());
+        long from = watermark.timestamp;
+        List<PatientRecord> records = new ArrayList<>();
+        long inserted = patient.collectRecords(from, Long.MAX_VALUE, records);
+        int[] skip = watermark.countsAtTimestamp.clone();
+        long evaluated = 0;
+        for (PatientRecord record : records) {
+            int type = record.getRecordTypeId();
+            if (record.getTimestamp() == from && type < skip.length && skip[type] > 0) {
+                skip[type]--; // evaluated by an earlier call
+                continue;
+            }
+            evaluate(patient, record);
+            watermark.advance(record.getTimestamp(), type);
+            evaluated++;
         }
+
+        // the count was read with the records, so every other sample stored since the previous
+        // pull arrived below the watermark or was evicted before a pull reached it
+        skippedRecords += inserted - watermark.inserted - evaluated;
+        watermark.inserted = inserted;
     }
 
     /**
-     * Helper method to trigger a combined alert when systolic pressure and oxygen levels are both low.
+     * Returns how many records {@link #evaluateNewData(Patient)} found stored
+     * but could not evaluate: records that arrived with a timestamp below the
+     * patient's watermark, and records evicted by the retention policy before
+     * a pull reached them.
+     *
+     * @return the number of records skipped so far
      */
-    private void evaluateCombined(Patient patient, PatientRecord record) {
-        if (!record.getRecordType().equals("SystolicPressure") || record.getMeasurementValue() >= 90) return;
+    public synchronized long getSkippedRecordCount() {
+        return skippedRecords;
+    }
 
-        List<PatientRecord> oxygenRecords = patient.getRecords(0, record.getTimestamp());
-        double latestOxygen = -1;
-        for (PatientRecord r : oxygenRecords) {
-            if (r.getRecordType().equals("OxygenSaturation")) {
-                latestOxygen = r.getMeasurementValue();
-            }
+    /**
+     * Evaluates a record as soon as the storage has stored it. Called by
+     * {@link DataStorage} once the generator is registered as a listener.
+     *
+     * @throws IllegalStateException if the generator pulls new data instead
+     */
+    @Override
+    public synchronized void onSample(Patient patient, int recordTypeId, long timestamp, double value) {
+        enterMode(Mode.PUSH);
+        evaluate(patient, new PatientRecord(patient.getPatientId(), value, recordTypeId, timestamp));
+    }
+
+    private void enterMode(Mode requested) {
+        if (mode == null) {
+            mode = requested;
+        } else if (mode != requested) {
+            throw new IllegalStateException(mode == Mode.PUSH
+                    ? "Generator evaluates pushed samples and cannot also pull"
+                    : "Generator pulls new data and cannot also evaluate pushed samples");
         }
+    }
 
-        if (latestOxygen < 92) {
+    /**
+     * Runs one record through its strategy, the manual check and the
+     * correlation rules.
+     */
+    private void evaluate(Patient patient, PatientRecord record) {
+        AlertRules current = rules; // one snapshot per record
+        int type = record.getRecordTypeId();
+        AlertStrategy strategy = type < strategyTable.length ? strategyTable[type] : null;
+        if (strategy != null) {
+            strategy.checkAlert(record, patient, current, triggeredAlerts);
+        }
+
+        evaluateManual(patient, record);
+        correlationEngine.evaluate(current, patient.getPatientId(), type,
+                record.getTimestamp(), record.getMeasurementValue(), triggeredAlerts);
+    }
+
+    /**
+     * Helper method to evaluate manual alert types.
+     */
+    private void evaluateManual(Patient patient, PatientRecord record) {
+        int type = record.getRecordTypeId();
+        if (type == RecordTypes.ALERT || type == RecordTypes.MANUAL_ALERT) {
             Alert base = defaultFactory.createAlert(
                 String.valueOf(patient.getPatientId()),
-                "Hypotensive Hypoxemia (Sys < 90 & Oxy < 92)",
+                "Manual Alert Triggered",
                 record.getTimestamp()
             );
             triggerAlert(new PriorityAlertDecorator(new RepeatedAlertDecorator(base, 2)));
@@ -129,4 +279,30 @@ public class AlertGenerator {
     public List<Alert> getTriggeredAlerts() {
         return triggeredAlerts;
     }
+
+    private enum Mode { PULL, PUSH }
+
+    /**
+     * The latest evaluated timestamp of a patient and, per record type, how
+     * many of the patient's records with that timestamp were evaluated.
+     * Counting per type keeps the watermark exact when a record with the same
+     * timestamp but a lower type id arrives later, since records with equal
+     * timestamps are read back in type order.
+     */
+    private static final class Watermark {
+        private long timestamp = Long.MIN_VALUE;
+        private int[] countsAtTimestamp = new int[RecordTypes.MANUAL_ALERT + 1];
+        private long inserted; // the patient's inserted count at the previous pull
+
+        private void advance(long evaluated, int recordTypeId) {
+            if (evaluated > timestamp) {
+                timestamp = evaluated;
+                Arrays.fill(countsAtTimestamp, 0);
+            }
+            if (recordTypeId >= countsAtTimestamp.length) {
+                countsAtTimestamp = Arrays.copyOf(countsAtTimestamp, recordTypeId + 1);
+            }
+            countsAtTimestamp[recordTypeId]++;
+        }
+    }
 }
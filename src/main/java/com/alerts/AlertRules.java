@@ -0,0 +1,323 @@
+package com.alerts;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoublePredicate;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.data_management.RecordTypes;
+
+/**
+ * The thresholds of the alert strategies and the correlation rules, as one
+ * immutable snapshot. Rules are usually loaded from a JSON file in which
+ * every entry is optional and falls back to its default:
+ * <pre>
+ * {
+ *   "bloodPressure": {
+ *     "systolic": {"below": 90, "above": 180},
+ *     "diastolic": {"below": 60, "above": 120},
+ *     "trendDelta": 10,
+ *     "trendSamples": 3
+ *   },
+ *   "oxygenSaturation": {"below": 92, "drop": 5, "dropWindowMillis": 600000},
+ *   "ecg": {"spikeFactor": 1.5, "windowSamples": 5},
+ *   "correlations": [
+ *     {"condition": "Hypotensive Hypoxemia (Sys &lt; 90 &amp; Oxy &lt; 92)",
+ *      "first": {"type": "SystolicPressure", "below": 90},
+ *      "second": {"type": "OxygenSaturation", "below": 92},
+ *      "windowMillis": 600000}
+ *   ]
+ * }
+ * </pre>
+ * A value is critical if it is below {@code below} or above {@code above}.
+ * In a correlation, a signal meets its condition if it is below
+ * {@code below} and above {@code above}, whichever are given.
+ * <p>
+ * The rules are compiled when they are created: the critical limits into
+ * arrays indexed by record type id and the correlation rules into a
+ * {@link CorrelationTable}, so evaluating a record does no lookups by name.
+ * Being immutable, a snapshot can be swapped into a running
+ * {@link AlertGenerator} with {@link AlertGenerator#setRules(AlertRules)}.
+ */
+public final class AlertRules {
+    private static final AlertRules DEFAULTS = new AlertRules(90, 180, 60, 120, 10, 3, 92, 5,
+            TimeUnit.MINUTES.toMillis(10), 1.5, 5, CorrelationRule.defaults());
+
+    private final double systolicBelow;
+    private final double systolicAbove;
+    private final double diastolicBelow;
+    private final double diastolicAbove;
+    private final double trendDelta;
+    private final int trendSamples;
+    private final double oxygenBelow;
+    private final double oxygenDrop;
+    private final long oxygenDropWindowMillis;
+    private final double ecgSpikeFactor;
+    private final int ecgWindowSamples;
+    private final List<CorrelationRule> correlationRules;
+
+    // compiled forms, indexed by record type id
+    private final double[] lowerLimits;
+    private final double[] upperLimits;
+    private final CorrelationTable correlationTable;
+
+    private AlertRules(double systolicBelow, double systolicAbove, double diastolicBelow, double diastolicAbove,
+                       double trendDelta, int trendSamples, double oxygenBelow, double oxygenDrop,
+                       long oxygenDropWindowMillis, double ecgSpikeFactor, int ecgWindowSamples,
+                       List<CorrelationRule> correlationRules) {
+        if (trendSamples < 2) {
+            throw new IllegalArgumentException("A trend needs at least 2 samples");
+        }
+        if (ecgWindowSamples < 1) {
+            throw new IllegalArgumentException("The ECG window needs at least 1 sample");
+        }
+        if (oxygenDropWindowMillis < 0) {
+            throw new IllegalArgumentException("The oxygen drop window must not be negative");
+        }
+        this.systolicBelow = systolicBelow;
+        this.systolicAbove = systolicAbove;
+        this.diastolicBelow = diastolicBelow;
+        this.diastolicAbove = diastolicAbove;
+        this.trendDelta = trendDelta;
+        this.trendSamples = trendSamples;
+        this.oxygenBelow = oxygenBelow;
+        this.oxygenDrop = oxygenDrop;
+        this.oxygenDropWindowMillis = oxygenDropWindowMillis;
+        this.ecgSpikeFactor = ecgSpikeFactor;
+        this.ecgWindowSamples = ecgWindowSamples;
+        this.correlationRules = Collections.unmodifiableList(new ArrayList<>(correlationRules));
+
+        int types = RecordTypes.MANUAL_ALERT + 1;
+        lowerLimits = new double[types];
+        upperLimits = new double[types];
+        Arrays.fill(lowerLimits, Double.NEGATIVE_INFINITY);
+        Arrays.fill(upperLimits, Double.POSITIVE_INFINITY);
+        lowerLimits[RecordTypes.SYSTOLIC_PRESSURE] = systolicBelow;
+        upperLimits[RecordTypes.SYSTOLIC_PRESSURE] = systolicAbove;
+        lowerLimits[RecordTypes.DIASTOLIC_PRESSURE] = diastolicBelow;
+        upperLimits[RecordTypes.DIASTOLIC_PRESSURE] = diastolicAbove;
+        lowerLimits[RecordTypes.OXYGEN_SATURATION] = oxygenBelow;
+        correlationTable = new CorrelationTable(this.correlationRules);
+    }
+
+    /**
+     * Returns the built-in rules: systolic pressure outside 90-180, diastolic
+     * outside 60-120, trends of 3 readings changing by more than 10 each,
+     * oxygen saturation below 92 or dropping by 5 within ten minutes, ECG
+     * values above 1.5 times the average of the previous 5, and
+     * {@link CorrelationRule#defaults()}.
+     *
+     * @return the default rules
+     */
+    public static AlertRules defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Reads rules from a JSON file.
+     *
+     * @param file the file to read
+     * @return the rules
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid rule configuration
+     */
+    public static AlertRules load(Path file) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses rules from JSON. Entries that are left out take the default
+     * value; unknown entries are rejected, so a misspelled threshold is not
+     * silently ignored.
+     *
+     * @param json the rule configuration
+     * @return the rules
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static AlertRules parse(String json) {
+        try {
+            JSONObject config = new JSONObject(json);
+            checkKeys(config, "configuration", "bloodPressure", "oxygenSaturation", "ecg", "correlations");
+            AlertRules d = DEFAULTS;
+
+            JSONObject pressure = section(config, "bloodPressure", "systolic", "diastolic", "trendDelta",
+                    "trendSamples");
+            JSONObject systolic = section(pressure, "systolic", "below", "above");
+            JSONObject diastolic = section(pressure, "diastolic", "below", "above");
+            JSONObject oxygen = section(config, "oxygenSaturation", "below", "drop", "dropWindowMillis");
+            JSONObject ecg = section(config, "ecg", "spikeFactor", "windowSamples");
+
+            List<CorrelationRule> correlations = d.correlationRules;
+            if (config.has("correlations")) {
+                correlations = new ArrayList<>();
+                JSONArray array = config.getJSONArray("correlations");
+                for (int i = 0; i < array.length(); i++) {
+                    correlations.add(parseCorrelation(array.getJSONObject(i)));
+                }
+            }
+
+            return new AlertRules(
+                    number(systolic, "below", d.systolicBelow),
+                    number(systolic, "above", d.systolicAbove),
+                    number(diastolic, "below", d.diastolicBelow),
+                    number(diastolic, "above", d.diastolicAbove),
+                    number(pressure, "trendDelta", d.trendDelta),
+                    (int) integer(pressure, "trendSamples", d.trendSamples, Integer.MAX_VALUE),
+                    number(oxygen, "below", d.oxygenBelow),
+                    number(oxygen, "drop", d.oxygenDrop),
+                    integer(oxygen, "dropWindowMillis", d.oxygenDropWindowMillis, Long.MAX_VALUE),
+                    number(ecg, "spikeFactor", d.ecgSpikeFactor),
+                    (int) integer(ecg, "windowSamples", d.ecgWindowSamples, Integer.MAX_VALUE),
+                    correlations);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid alert rules: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns a copy of these rules with other correlation rules.
+     *
+     * @param rules the correlation rules
+     * @return the new rules
+     */
+    public AlertRules withCorrelationRules(List<CorrelationRule> rules) {
+        return new AlertRules(systolicBelow, systolicAbove, diastolicBelow, diastolicAbove, trendDelta,
+                trendSamples, oxygenBelow, oxygenDrop, oxygenDropWindowMillis, ecgSpikeFactor, ecgWindowSamples,
+                rules);
+    }
+
+    /**
+     * Returns whether a value is outside the critical limits of its record
+     * type. Types without limits are never critical.
+     *
+     * @param recordTypeId the record type id of the value
+     * @param value        the measured value
+     * @return whether the value is critical
+     */
+    public boolean isCritical(int recordTypeId, double value) {
+        return recordTypeId < lowerLimits.length
+                && (value < lowerLimits[recordTypeId] || value > upperLimits[recordTypeId]);
+    }
+
+    public double getTrendDelta() {
+        return trendDelta;
+    }
+
+    public int getTrendSamples() {
+        return trendSamples;
+    }
+
+    public double getOxygenDrop() {
+        return oxygenDrop;
+    }
+
+    public long getOxygenDropWindowMillis() {
+        return oxygenDropWindowMillis;
+    }
+
+    public double getEcgSpikeFactor() {
+        return ecgSpikeFactor;
+    }
+
+    public int getEcgWindowSamples() {
+        return ecgWindowSamples;
+    }
+
+    public List<CorrelationRule> getCorrelationRules() {
+        return correlationRules;
+    }
+
+    CorrelationTable getCorrelationTable() {
+        return correlationTable;
+    }
+
+    private static CorrelationRule parseCorrelation(JSONObject rule) {
+        checkKeys(rule, "correlation", "condition", "first", "second", "windowMillis");
+        JSONObject first = rule.getJSONObject("first");
+        JSONObject second = rule.getJSONObject("second");
+        return new CorrelationRule(rule.getString("condition"),
+                signalType(first), signalCondition(first),
+                signalType(second), signalCondition(second),
+                integer(rule, "windowMillis", Long.MAX_VALUE));
+    }
+
+    private static int signalType(JSONObject signal) {
+        checkKeys(signal, "signal", "type", "below", "above");
+        String type = signal.getString("type");
+        int id = RecordTypes.find(type);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown record type \"" + type + "\" in signal");
+        }
+        return id;
+    }
+
+    private static DoublePredicate signalCondition(JSONObject signal) {
+        double below = number(signal, "below", Double.POSITIVE_INFINITY);
+        double above = number(signal, "above", Double.NEGATIVE_INFINITY);
+        if (!signal.has("below") && !signal.has("above")) {
+            throw new IllegalArgumentException("Signal " + signal.getString("type") + " needs \"below\" or \"above\"");
+        }
+        return value -> value < below && value > above;
+    }
+
+    /**
+     * Returns a number entry, or the default if it is left out. Unlike
+     * {@code optDouble}, a value that is not a number is an error.
+     */
+    private static double number(JSONObject object, String key, double defaultValue) {
+        return object.has(key) ? object.getDouble(key) : defaultValue;
+    }
+
+    /**
+     * Returns a whole-number entry, or the default if it is left out.
+     */
+    private static long integer(JSONObject object, String key, long defaultValue, long max) {
+        return object.has(key) ? integer(object, key, max) : defaultValue;
+    }
+
+    /**
+     * Returns a whole-number entry. A fraction or a value above {@code max}
+     * is an error rather than being truncated.
+     */
+    private static long integer(JSONObject object, String key, long max) {
+        long value;
+        try {
+            value = object.getBigDecimal(key).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("\"" + key + "\" must be a whole number", e);
+        }
+        if (value > max) {
+            throw new IllegalArgumentException("\"" + key + "\" is too large");
+        }
+        return value;
+    }
+
+    /**
+     * Returns a nested object, or an empty one if it is left out.
+     */
+    private static JSONObject section(JSONObject parent, String key, String... allowed) {
+        JSONObject section = parent.has(key) ? parent.getJSONObject(key) : new JSONObject();
+        checkKeys(section, key, allowed);
+        return section;
+    }
+
+    private static void checkKeys(JSONObject object, String name, String... allowed) {
+        Set<String> known = Set.of(allowed);
+        for (String key : object.keySet()) {
+            if (!known.contains(key)) {
+                throw new IllegalArgumentException("Unknown entry \"" + key + "\" in " + name);
+            }
+        }
+    }
+}
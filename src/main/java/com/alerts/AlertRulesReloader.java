@@ -0,0 +1,105 @@
+package com.alerts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches an {@link AlertRules} configuration file and hands every valid new
+ * version to a consumer, typically {@link AlertGenerator#setRules} or
+ * {@link ShardedAlertEvaluator#setRules}, so thresholds can be changed
+ * without a restart.
+ * <p>
+ * The file is read again only when its modification time or size changed.
+ * Parsing and compiling happen on the reloader's thread; evaluation only
+ * sees the finished snapshot. A file that cannot be read or is invalid is
+ * reported once and the rules in use stay as they are.
+ */
+public class AlertRulesReloader {
+    private final Path file;
+    private final Consumer<AlertRules> target;
+    private long lastModified = Long.MIN_VALUE; // guarded by this
+    private long lastSize = -1;
+    private boolean unreadable;
+    private ScheduledExecutorService poller;
+
+    /**
+     * Creates a reloader. Nothing is read until {@link #reload} or
+     * {@link #start} is called.
+     *
+     * @param file   the JSON rule configuration
+     * @param target receives every successfully loaded version
+     */
+    public AlertRulesReloader(Path file, Consumer<AlertRules> target) {
+        this.file = file;
+        this.target = target;
+    }
+
+    /**
+     * Loads the file if it changed since the previous call.
+     *
+     * @return whether new rules were handed to the target
+     */
+    public synchronized boolean reload() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            if (!unreadable) {
+                System.err.println("Alert rules not readable, keeping current rules: " + file);
+                unreadable = true;
+                lastModified = Long.MIN_VALUE; // load the file again once it is back
+                lastSize = -1;
+            }
+            return false;
+        }
+        unreadable = false;
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (modified == lastModified && attributes.size() == lastSize) {
+            return false;
+        }
+        lastModified = modified;
+        lastSize = attributes.size();
+
+        AlertRules rules;
+        try {
+            rules = AlertRules.load(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid alert rules in " + file + ", keeping current rules: " + e.getMessage());
+            return false;
+        }
+        target.accept(rules);
+        return true;
+    }
+
+    /**
+     * Checks the file for changes periodically on a background thread,
+     * starting with an immediate check.
+     *
+     * @param intervalMillis the time between two checks
+     */
+    public synchronized void start(long intervalMillis) {
+        stop();
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "alert-rules-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::reload, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background checks started by {@link #start}.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+}
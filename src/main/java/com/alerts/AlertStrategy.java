@@ -7,4 +7,22 @@ import java.util.List;
 
 public interface AlertStrategy {
     boolean checkAlert(PatientRecord record, Patient patient, List<Alert> triggeredAlerts);
+
+    /**
+     * Checks a record against the given rules. Strategies keep their
+     * per-patient windows across calls, so the rules can change between
+     * records without losing history. Strategies that do not read the rules
+     * can leave this to {@link #checkAlert(PatientRecord, Patient, List)}.
+     */
+    default boolean checkAlert(PatientRecord record, Patient patient, AlertRules rules, List<Alert> triggeredAlerts) {
+        return checkAlert(record, patient, triggeredAlerts);
+    }
+
+    /**
+     * Forgets the windows of a patient, before their history is evaluated
+     * again from the start. Strategies without per-patient state need not
+     * override this.
+     */
+    default void resetPatient(int patientId) {
+    }
 }
@@ -2,22 +2,33 @@ package com.alerts;
 
 import com.alerts.alertFactories.AlertFactory;
 import com.alerts.alertFactories.BloodPressureAlertFactory;
+import com.alerts.windows.PatientStates;
+import com.alerts.windows.RingWindow;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 
-import java.util.*;
+import java.util.List;
 
 
 public class BloodPressureStrategy implements AlertStrategy {
 
     private final AlertFactory factory = new BloodPressureAlertFactory();
-    private final Map<Integer, List<Double>> systolicTrends = new HashMap<>();
-    private final Map<Integer, List<Double>> diastolicTrends = new HashMap<>();
+    private final PatientStates<RingWindow> systolicTrends = new PatientStates<>(
+            id -> new RingWindow(AlertRules.defaults().getTrendSamples()));
+    private final PatientStates<RingWindow> diastolicTrends = new PatientStates<>(
+            id -> new RingWindow(AlertRules.defaults().getTrendSamples()));
 
     @Override
     public boolean checkAlert(PatientRecord record, Patient patient, List<Alert> triggeredAlerts) {
-        String type = record.getRecordType();
-        if (!type.equals("SystolicPressure") && !type.equals("DiastolicPressure")) return false;
+        return checkAlert(record, patient, AlertRules.defaults(), triggeredAlerts);
+    }
+
+    @Override
+    public boolean checkAlert(PatientRecord record, Patient patient, AlertRules rules, List<Alert> triggeredAlerts) {
+        int type = record.getRecordTypeId();
+        if (type != RecordTypes.SYSTOLIC_PRESSURE && type != RecordTypes.DIASTOLIC_PRESSURE) return false;
+        boolean systolic = type == RecordTypes.SYSTOLIC_PRESSURE;
 
         String patientId = String.valueOf(patient.getPatientId());
         double value = record.getMeasurementValue();
@@ -25,19 +36,17 @@ public class BloodPressureStrategy implements AlertStrategy {
         boolean triggered = false;
 
         // Critical thresholds
-        if ((type.equals("SystolicPressure") && (value < 90 || value > 180)) ||
-            (type.equals("DiastolicPressure") && (value < 60 || value > 120))) {
-            triggeredAlerts.add(factory.createAlert(patientId, "Critical " + type + ": " + value, time));
+        if (rules.isCritical(type, value)) {
+            triggeredAlerts.add(factory.createAlert(patientId, "Critical " + record.getRecordType() + ": " + value, time));
             triggered = true;
         }
 
         // Trend detection
-        Map<Integer, List<Double>> trendMap = type.equals("SystolicPressure") ? systolicTrends : diastolicTrends;
-        List<Double> trend = trendMap.computeIfAbsent(patient.getPatientId(), id -> new ArrayList<>());
+        RingWindow trend = (systolic ? systolicTrends : diastolicTrends).get(patient.getPatientId());
+        trend.resize(rules.getTrendSamples()); // no-op unless the rules changed
         trend.add(value);
-        if (trend.size() > 3) trend.remove(0);
-        if (trend.size() == 3 && isConsistentTrend(trend)) {
-            String label = type.equals("SystolicPressure") ? "Systolic Trend" : "Diastolic Trend";
+        if (trend.isFull() && isConsistentTrend(trend, rules.getTrendDelta())) {
+            String label = systolic ? "Systolic Trend" : "Diastolic Trend";
             triggeredAlerts.add(factory.createAlert(patientId, label + ": " + trend, time));
 
             triggered = true;
@@ -46,8 +55,24 @@ public class BloodPressureStrategy implements AlertStrategy {
         return triggered;
     }
 
-    private boolean isConsistentTrend(List<Double> values) {
-        return (values.get(1) - values.get(0) > 10 && values.get(2) - values.get(1) > 10) ||
-               (values.get(0) - values.get(1) > 10 && values.get(1) - values.get(2) > 10);
+    /**
+     * Checks if every value differs from the previous one by more than the
+     * delta, in the same direction throughout.
+     */
+    private boolean isConsistentTrend(RingWindow values, double delta) {
+        boolean rising = true;
+        boolean falling = true;
+        for (int i = 1; i < values.size(); i++) {
+            double step = values.get(i) - values.get(i - 1);
+            rising &= step > delta;
+            falling &= -step > delta;
+        }
+        return rising || falling;
+    }
+
+    @Override
+    public void resetPatient(int patientId) {
+        systolicTrends.get(patientId).clear();
+        diastolicTrends.get(patientId).clear();
     }
 }
@@ -0,0 +1,115 @@
+package com.alerts;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alerts.alertFactories.AlertFactory;
+import com.alerts.alertFactories.DefaultAlertFactory;
+
+/**
+ * Evaluates {@link CorrelationRule}s one record at a time. For each patient
+ * the engine remembers only the latest reading of every signal that some rule
+ * uses, and a dispatch table indexed by record type id lists the rules a
+ * record can complete, so a record costs O(1) per affected rule no matter how
+ * long the patient's history is.
+ * <p>
+ * Evaluation is not thread-safe; the owning {@link AlertGenerator}
+ * serializes access. The rules are not held by the engine; every call
+ * passes the {@link AlertRules} snapshot in use.
+ */
+public class CorrelationEngine {
+    private final AlertFactory factory = new DefaultAlertFactory();
+    private final Map<Integer, LatestReadings> patients = new HashMap<>();
+
+    /**
+     * Records a reading and adds an alert for every correlation rule of the
+     * given snapshot it completes. The latest readings are kept across rule
+     * swaps, so a new rule can fire on a reading that arrived before it.
+     *
+     * @param alertRules      the rules in use, taken once per record
+     * @param patientId       the patient the reading belongs to
+     * @param recordTypeId    the record type id of the reading
+     * @param timestamp       the time of the reading in milliseconds since epoch
+     * @param value           the measured value
+     * @param triggeredAlerts receives the alerts
+     */
+    public void evaluate(AlertRules alertRules, int patientId, int recordTypeId, long timestamp, double value,
+                         List<Alert> triggeredAlerts) {
+        CorrelationTable rules = alertRules.getCorrelationTable();
+        int[] candidates = rules.rulesFor(recordTypeId);
+        if (candidates.length == 0) {
+            return;
+        }
+        LatestReadings latest = patients.get(patientId);
+        if (latest == null) {
+            latest = new LatestReadings(rules.typeCount());
+            patients.put(patientId, latest);
+        } else {
+            latest.ensureTypes(rules.typeCount());
+        }
+
+        for (int index : candidates) {
+            CorrelationRule rule = rules.rules[index];
+            boolean first = rule.getFirstTypeId() == recordTypeId;
+            int otherType = first ? rule.getSecondTypeId() : rule.getFirstTypeId();
+            if (!(first ? rule.testFirst(value) : rule.testSecond(value)) || !latest.has(otherType)) {
+                continue;
+            }
+            double other = latest.values[otherType];
+            if (Math.abs(timestamp - latest.timestamps[otherType]) <= rule.getWindowMillis()
+                    && (first ? rule.testSecond(other) : rule.testFirst(other))) {
+                Alert base = factory.createAlert(String.valueOf(patientId), rule.getCondition(), timestamp);
+                triggeredAlerts.add(new PriorityAlertDecorator(new RepeatedAlertDecorator(base, 2)));
+            }
+        }
+        latest.update(recordTypeId, timestamp, value);
+    }
+
+    /**
+     * Forgets the latest readings of a patient.
+     *
+     * @param patientId the patient
+     */
+    public void resetPatient(int patientId) {
+        patients.remove(patientId);
+    }
+
+    /**
+     * The latest reading of each signal of one patient.
+     */
+    private static final class LatestReadings {
+        private long[] timestamps;
+        private double[] values;
+
+        private LatestReadings(int types) {
+            timestamps = new long[types];
+            values = new double[types];
+            Arrays.fill(timestamps, Long.MIN_VALUE);
+        }
+
+        /**
+         * Makes room for record types added by a rule reload.
+         */
+        private void ensureTypes(int types) {
+            if (types > timestamps.length) {
+                int known = timestamps.length;
+                timestamps = Arrays.copyOf(timestamps, types);
+                values = Arrays.copyOf(values, types);
+                Arrays.fill(timestamps, known, types, Long.MIN_VALUE);
+            }
+        }
+
+        private boolean has(int typeId) {
+            return timestamps[typeId] != Long.MIN_VALUE;
+        }
+
+        private void update(int typeId, long timestamp, double value) {
+            if (timestamp >= timestamps[typeId]) { // a late reading does not replace a newer one
+                timestamps[typeId] = timestamp;
+                values[typeId] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.alerts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoublePredicate;
+
+import com.data_management.RecordTypes;
+
+/**
+ * A composite alert condition over two signals: "the latest reading of signal
+ * A meets condition A and the latest reading of signal B meets condition B,
+ * and the two readings are at most a window apart". The rule fires whenever a
+ * reading of either signal completes such a pair. Rules are evaluated by a
+ * {@link CorrelationEngine}.
+ */
+public final class CorrelationRule {
+    private final String condition;
+    private final int firstTypeId;
+    private final DoublePredicate firstCondition;
+    private final int secondTypeId;
+    private final DoublePredicate secondCondition;
+    private final long windowMillis;
+
+    /**
+     * Creates a rule.
+     *
+     * @param condition       the condition text of the alerts the rule raises
+     * @param firstTypeId     the record type id of signal A, from {@link RecordTypes}
+     * @param firstCondition  the condition on the value of signal A
+     * @param secondTypeId    the record type id of signal B
+     * @param secondCondition the condition on the value of signal B
+     * @param windowMillis    the largest time between the two readings
+     */
+    public CorrelationRule(String condition, int firstTypeId, DoublePredicate firstCondition,
+                           int secondTypeId, DoublePredicate secondCondition, long windowMillis) {
+        if (firstTypeId == secondTypeId) {
+            throw new IllegalArgumentException("A correlation rule needs two different signals");
+        }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must not be negative");
+        }
+        this.condition = condition;
+        this.firstTypeId = firstTypeId;
+        this.firstCondition = firstCondition;
+        this.secondTypeId = secondTypeId;
+        this.secondCondition = secondCondition;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Returns the rules used by default: hypotensive hypoxemia, systolic
+     * pressure below 90 together with oxygen saturation below 92 within ten
+     * minutes.
+     *
+     * @return a new, modifiable list of the default rules
+     */
+    public static List<CorrelationRule> defaults() {
+        List<CorrelationRule> rules = new ArrayList<>();
+        rules.add(new CorrelationRule("Hypotensive Hypoxemia (Sys < 90 & Oxy < 92)",
+                RecordTypes.SYSTOLIC_PRESSURE, value -> value < 90,
+                RecordTypes.OXYGEN_SATURATION, value -> value < 92,
+                TimeUnit.MINUTES.toMillis(10)));
+        return rules;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public int getFirstTypeId() {
+        return firstTypeId;
+    }
+
+    public int getSecondTypeId() {
+        return secondTypeId;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    boolean testFirst(double value) {
+        return firstCondition.test(value);
+    }
+
+    boolean testSecond(double value) {
+        return secondCondition.test(value);
+    }
+}
@@ -0,0 +1,48 @@
+package com.alerts;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of {@link CorrelationRule}s compiled into a dispatch table indexed by
+ * record type id, listing the rules a record of that type can complete.
+ * Immutable, so a table can be swapped in while a {@link CorrelationEngine}
+ * is evaluating.
+ */
+final class CorrelationTable {
+    private static final int[] NONE = new int[0];
+
+    final CorrelationRule[] rules;
+    final int[][] rulesByType; // record type id -> indexes into rules
+
+    CorrelationTable(List<CorrelationRule> rules) {
+        this.rules = rules.toArray(new CorrelationRule[0]);
+        int types = 0;
+        for (CorrelationRule rule : this.rules) {
+            types = Math.max(types, Math.max(rule.getFirstTypeId(), rule.getSecondTypeId()) + 1);
+        }
+        rulesByType = new int[types][0];
+        for (int i = 0; i < this.rules.length; i++) {
+            addToTable(this.rules[i].getFirstTypeId(), i);
+            addToTable(this.rules[i].getSecondTypeId(), i);
+        }
+    }
+
+    /**
+     * Returns the indexes of the rules that use the given record type.
+     */
+    int[] rulesFor(int typeId) {
+        return typeId < rulesByType.length ? rulesByType[typeId] : NONE;
+    }
+
+    int typeCount() {
+        return rulesByType.length;
+    }
+
+    private void addToTable(int typeId, int ruleIndex) {
+        int[] entries = rulesByType[typeId];
+        entries = Arrays.copyOf(entries, entries.length + 1);
+        entries[entries.length - 1] = ruleIndex;
+        rulesByType[typeId] = entries;
+    }
+}
@@ -2,37 +2,51 @@ package com.alerts;
 
 import com.alerts.alertFactories.AlertFactory;
 import com.alerts.alertFactories.ECGAlertFactory;
+import com.alerts.windows.PatientStates;
+import com.alerts.windows.RingWindow;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 
-import java.util.*;
+import java.util.List;
 
 
 public class HeartRateStrategy implements AlertStrategy {
 
     private final AlertFactory factory = new ECGAlertFactory();
-    private final Map<Integer, LinkedList<Double>> ecgWindows = new HashMap<>();
+    private final PatientStates<RingWindow> ecgWindows = new PatientStates<>(
+            id -> new RingWindow(AlertRules.defaults().getEcgWindowSamples()));
 
     @Override
     public boolean checkAlert(PatientRecord record, Patient patient, List<Alert> triggeredAlerts) {
-        if (!record.getRecordType().equals("ECG")) return false;
+        return checkAlert(record, patient, AlertRules.defaults(), triggeredAlerts);
+    }
+
+    @Override
+    public boolean checkAlert(PatientRecord record, Patient patient, AlertRules rules, List<Alert> triggeredAlerts) {
+        if (record.getRecordTypeId() != RecordTypes.ECG) return false;
 
         String patientId = String.valueOf(patient.getPatientId());
         double value = record.getMeasurementValue();
         long time = record.getTimestamp();
         boolean triggered = false;
 
-        LinkedList<Double> window = ecgWindows.computeIfAbsent(patient.getPatientId(), id -> new LinkedList<>());
-        double avg = window.stream().mapToDouble(d -> d).average().orElse(0);
+        RingWindow window = ecgWindows.get(patient.getPatientId());
+        window.resize(rules.getEcgWindowSamples()); // no-op unless the rules changed
+        double avg = window.average();
 
-        if (avg > 0 && value > 1.5 * avg) {
+        if (avg > 0 && value > rules.getEcgSpikeFactor() * avg) {
             triggeredAlerts.add(factory.createAlert(patientId, "ECG Spike Detected: " + value + " (avg: " + avg + ")", time));
             triggered = true;
         }
 
         window.add(value);
-        if (window.size() > 5) window.removeFirst();
 
         return triggered;
     }
+
+    @Override
+    public void resetPatient(int patientId) {
+        ecgWindows.get(patientId).clear();
+    }
 }
@@ -2,20 +2,29 @@ package com.alerts;
 
 import com.alerts.alertFactories.AlertFactory;
 import com.alerts.alertFactories.BloodOxygenAlertFactory;
+import com.alerts.windows.PatientStates;
+import com.alerts.windows.TimeWindow;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 
-import java.util.*;
+import java.util.List;
 
 
 public class OxygenSaturationStrategy implements AlertStrategy {
 
     private final AlertFactory factory = new BloodOxygenAlertFactory();
-    private final Map<Integer, TreeMap<Long, Double>> patientOxygenHistory = new HashMap<>();
+    private final PatientStates<TimeWindow> patientOxygenHistory = new PatientStates<>(
+            id -> new TimeWindow(AlertRules.defaults().getOxygenDropWindowMillis()));
 
     @Override
     public boolean checkAlert(PatientRecord record, Patient patient, List<Alert> triggeredAlerts) {
-        if (!record.getRecordType().equals("OxygenSaturation")) return false;
+        return checkAlert(record, patient, AlertRules.defaults(), triggeredAlerts);
+    }
+
+    @Override
+    public boolean checkAlert(PatientRecord record, Patient patient, AlertRules rules, List<Alert> triggeredAlerts) {
+        if (record.getRecordTypeId() != RecordTypes.OXYGEN_SATURATION) return false;
 
         String patientId = String.valueOf(patient.getPatientId());
         double value = record.getMeasurementValue();
@@ -23,24 +32,32 @@ public class OxygenSaturationStrategy implements AlertStrategy {
         boolean triggered = false;
 
         // Low oxygen alert
-        if (value < 92) {
+        if (rules.isCritical(RecordTypes.OXYGEN_SATURATION, value)) {
             triggeredAlerts.add(factory.createAlert(patientId, "Low Oxygen Saturation: " + value, time));
             triggered = true;
         }
 
-        // Rapid drop check (in last 10 minutes)
-        TreeMap<Long, Double> history = patientOxygenHistory.computeIfAbsent(patient.getPatientId(), id -> new TreeMap<>());
-        history.put(time, value);
-
-        SortedMap<Long, Double> last10min = history.subMap(time - 600_000, time);
-        if (!last10min.isEmpty()) {
-            double oldest = last10min.values().iterator().next();
-            if (oldest - value >= 5) {
+        // Rapid drop check (in last 10 minutes by default)
+        TimeWindow history = patientOxygenHistory.get(patient.getPatientId());
+        if (!history.isEmpty() && time < history.newestTimestamp()) {
+            return triggered; // a late reading; the drop check only looks back from the newest one
+        }
+        history.setSpanMillis(rules.getOxygenDropWindowMillis());
+        history.advanceTo(time);
+        if (!history.isEmpty()) {
+            double oldest = history.oldestValue();
+            if (oldest - value >= rules.getOxygenDrop()) {
                 triggeredAlerts.add(factory.createAlert(patientId, "Rapid Oxygen Drop: " + oldest + " → " + value, time));
                 triggered = true;
             }
         }
+        history.add(time, value);
 
         return triggered;
     }
+
+    @Override
+    public void resetPatient(int patientId) {
+        patientOxygenHistory.get(patientId).clear();
+    }
 }
@@ -0,0 +1,273 @@
+package com.alerts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.SampleListener;
+
+/**
+ * Evaluates alerts on several threads by partitioning patients by id across
+ * single-threaded workers. Each worker owns its own {@link AlertGenerator},
+ * and with it its own strategy and correlation state, so workers share
+ * nothing but the alert sink, a synchronized list.
+ * <p>
+ * All work for a patient runs on the same worker in submission order, so the
+ * alerts of one patient are raised in the same order as with a single
+ * {@link AlertGenerator}; only alerts of different patients interleave.
+ * <p>
+ * Like {@link AlertGenerator}, the evaluator either pulls new data with
+ * {@link #evaluateNewData()} or is registered with
+ * {@link DataStorage#addSampleListener(SampleListener)} to have samples pushed
+ * to the owning worker as they are stored, but not both.
+ * <p>
+ * Each worker queues at most {@value #QUEUE_CAPACITY} tasks. When a queue is
+ * full, the submitting thread blocks until the worker catches up, so a
+ * storage that pushes samples faster than they are evaluated is slowed down
+ * instead of filling the heap. Failed evaluations are counted; those of
+ * {@link #evaluateNewData()} are also rethrown.
+ * <p>
+ * {@link #close()} unregisters the evaluator from its storage and waits
+ * until the queued work is done. Samples pushed after that are dropped and
+ * counted, so a storage still holding the listener keeps ingesting.
+ */
+public class ShardedAlertEvaluator implements SampleListener, AutoCloseable {
+    static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * Waits for room in a full worker queue instead of rejecting the task.
+     */
+    private static final RejectedExecutionHandler BLOCK = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Alert evaluator is closed");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for an alert worker", e);
+        }
+        // a worker that shut down meanwhile may never take the task
+        if (executor.isShutdown() && executor.getQueue().remove(task)) {
+            throw new RejectedExecutionException("Alert evaluator is closed");
+        }
+    };
+
+    private final DataStorage dataStorage;
+    private final ThreadPoolExecutor[] workers;
+    private final AlertGenerator[] generators;
+    private final List<Alert> triggeredAlerts = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Creates an evaluator with one worker per available processor and the
+     * default correlation rules.
+     *
+     * @param dataStorage the storage whose patients to evaluate
+     */
+    public ShardedAlertEvaluator(DataStorage dataStorage) {
+        this(dataStorage, Runtime.getRuntime().availableProcessors(), CorrelationRule.defaults());
+    }
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param dataStorage      the storage whose patients to evaluate
+     * @param workerCount      the number of worker threads
+     * @param correlationRules the rules over pairs of signals
+     */
+    public ShardedAlertEvaluator(DataStorage dataStorage, int workerCount, List<CorrelationRule> correlationRules) {
+        this(dataStorage, workerCount, AlertRules.defaults().withCorrelationRules(correlationRules));
+    }
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param dataStorage the storage whose patients to evaluate
+     * @param workerCount the number of worker threads
+     * @param rules       the thresholds and correlation rules
+     */
+    public ShardedAlertEvaluator(DataStorage dataStorage, int workerCount, AlertRules rules) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1");
+        }
+        this.dataStorage = dataStorage;
+        this.workers = new ThreadPoolExecutor[workerCount];
+        this.generators = new AlertGenerator[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            String name = "alert-worker-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }, BLOCK);
+            generators[i] = new AlertGenerator(dataStorage, rules, triggeredAlerts);
+        }
+    }
+
+    /**
+     * Evaluates the new data of every patient in the storage, in parallel,
+     * and waits until all of it is evaluated.
+     *
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the evaluation of a patient failed;
+     *                               the other patients are still evaluated
+     */
+    public void evaluateNewData() throws InterruptedException {
+        List<Future<?>> results = new ArrayList<>();
+        for (Patient patient : dataStorage.getAllPatients()) {
+            int shard = shardOf(patient.getPatientId());
+            results.add(workers[shard].submit(() -> generators[shard].evaluateNewData(patient)));
+        }
+        await(results);
+    }
+
+    /**
+     * Hands a stored sample to the worker that owns its patient, waiting if
+     * that worker's queue is full. A failed evaluation is counted and
+     * reported, as there is no caller left to tell. Once the evaluator is
+     * closed the sample is dropped and counted instead.
+     */
+    @Override
+    public void onSample(Patient patient, int recordTypeId, long timestamp, double value) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+        int shard = shardOf(patient.getPatientId());
+        try {
+            workers[shard].execute(() -> {
+                try {
+                    generators[shard].onSample(patient, recordTypeId, timestamp, value);
+                } catch (RuntimeException e) {
+                    failures.increment();
+                    System.err.println("Alert evaluation failed: " + e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dropped.increment(); // closed meanwhile, or interrupted while waiting for room
+        }
+    }
+
+    /**
+     * Waits until every sample pushed so far is evaluated.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        List<Future<?>> results = new ArrayList<>();
+        for (ThreadPoolExecutor worker : workers) {
+            results.add(worker.submit(() -> { }));
+        }
+        await(results);
+    }
+
+    /**
+     * Replaces the rules of every worker without stopping evaluation; see
+     * {@link AlertGenerator#setRules(AlertRules)}.
+     *
+     * @param rules the rules to evaluate from now on
+     */
+    public void setRules(AlertRules rules) {
+        for (AlertGenerator generator : generators) {
+            generator.setRules(rules);
+        }
+    }
+
+    /**
+     * Returns a copy of the alerts triggered so far.
+     *
+     * @return the alerts, grouped in evaluation order per patient
+     */
+    public List<Alert> getTriggeredAlerts() {
+        synchronized (triggeredAlerts) {
+            return new ArrayList<>(triggeredAlerts);
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the number of evaluations that threw, whether of a pushed
+     * sample or of a patient in {@link #evaluateNewData()}.
+     *
+     * @return the number of failed evaluations
+     */
+    public long getFailedCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns the number of pushed samples that were not evaluated because
+     * the evaluator was closed.
+     *
+     * @return the number of dropped samples
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Unregisters the evaluator from its storage, stops the workers after the
+     * work already submitted and waits for them. If interrupted while
+     * waiting, returns with the interrupt flag set and the workers finishing
+     * in the background.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dataStorage.removeSampleListener(this);
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor worker : workers) {
+                worker.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int shardOf(int patientId) {
+        return Math.floorMod(patientId, workers.length);
+    }
+
+    /**
+     * Waits for every result, then rethrows the first failure with the
+     * others attached as suppressed exceptions.
+     */
+    private void await(List<Future<?>> results) throws InterruptedException {
+        IllegalStateException failure = null;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                failures.increment();
+                if (failure == null) {
+                    failure = new IllegalStateException("Alert evaluation failed", e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.alerts.windows;
+
+import java.util.Arrays;
+
+/**
+ * A deque of timestamped values kept monotonic so that the minimum (or the
+ * maximum) of a sliding time window is always at its head. Every value is
+ * pushed and popped at most once, so maintaining the extreme costs O(1)
+ * amortized per value. The arrays grow to the largest number of values that
+ * were ever live at once and are reused afterwards. Not thread-safe.
+ */
+public final class MonotonicDeque {
+    private final boolean maximum;
+    private long[] timestamps = new long[16];
+    private double[] values = new double[16];
+    private int head;
+    private int size;
+
+    /**
+     * Creates an empty deque.
+     *
+     * @param maximum true to track the maximum, false for the minimum
+     */
+    public MonotonicDeque(boolean maximum) {
+        this.maximum = maximum;
+    }
+
+    /**
+     * Adds a value, dropping the values it makes irrelevant. Timestamps must
+     * not decrease.
+     *
+     * @param timestamp the time of the value
+     * @param value     the value
+     */
+    public void push(long timestamp, double value) {
+        while (size > 0) {
+            double last = values[index(size - 1)];
+            if (maximum ? last > value : last < value) {
+                break;
+            }
+            size--;
+        }
+        if (size == values.length) {
+            grow();
+        }
+        int slot = index(size);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Removes the values older than the given time.
+     *
+     * @param timestamp the earliest timestamp to keep
+     */
+    public void evictBefore(long timestamp) {
+        while (size > 0 && timestamps[head] < timestamp) {
+            head = (head + 1) % values.length;
+            size--;
+        }
+    }
+
+    /**
+     * Returns the minimum or maximum of the values in the window.
+     *
+     * @return the extreme value
+     * @throws IllegalStateException if the deque is empty
+     */
+    public double peek() {
+        if (size == 0) {
+            throw new IllegalStateException("Empty window");
+        }
+        return values[head];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private int index(int offset) {
+        return (head + offset) % values.length;
+    }
+
+    private void grow() {
+        long[] newTimestamps = new long[timestamps.length * 2];
+        double[] newValues = new double[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimestamps[i] = timestamps[index(i)];
+            newValues[i] = values[index(i)];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,85 @@
+package com.alerts.windows;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Per-patient state keyed by the primitive patient id, with open addressing
+ * instead of a {@code HashMap<Integer, T>}, so looking up a patient's window
+ * boxes nothing. Not thread-safe.
+ *
+ * @param <T> the type of state kept per patient
+ */
+public final class PatientStates<T> {
+    private final IntFunction<T> factory;
+    private int[] keys = new int[16];
+    private Object[] states = new Object[16];
+    private int size;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param factory creates the state of a patient seen for the first time
+     */
+    public PatientStates(IntFunction<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the state of a patient, creating it on first use.
+     *
+     * @param patientId the patient id
+     * @return the patient's state
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int patientId) {
+        int mask = keys.length - 1;
+        int slot = mix(patientId) & mask;
+        while (states[slot] != null) {
+            if (keys[slot] == patientId) {
+                return (T) states[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        T state = factory.apply(patientId);
+        keys[slot] = patientId;
+        states[slot] = state;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return state;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(states, null);
+        size = 0;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldStates = states;
+        keys = new int[oldKeys.length * 2];
+        states = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] == null) {
+                continue;
+            }
+            int slot = mix(oldKeys[i]) & mask;
+            while (states[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            states[slot] = oldStates[i];
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.alerts.windows;
+
+import java.util.Arrays;
+
+/**
+ * A count-based sliding window over the last {@code capacity} values, backed
+ * by a primitive ring buffer with a running sum, so adding a value and
+ * reading the sum or average are O(1) and allocate nothing.
+ * <p>
+ * To keep rounding errors of the running sum from accumulating, the sum is
+ * recomputed from the buffer each time the ring wraps around, which is still
+ * O(1) amortized. Not thread-safe.
+ */
+public final class RingWindow {
+    private double[] values;
+    private int start;
+    private int size;
+    private double sum;
+
+    /**
+     * Creates an empty window.
+     *
+     * @param capacity the number of most recent values the window keeps
+     */
+    public RingWindow(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds a value, evicting the oldest one if the window is full.
+     *
+     * @param value the value to add
+     */
+    public void add(double value) {
+        if (size < values.length) {
+            values[(start + size) % values.length] = value;
+            size++;
+            sum += value;
+            return;
+        }
+        sum += value - values[start];
+        values[start] = value;
+        start = (start + 1) % values.length;
+        if (start == 0) {
+            sum = 0;
+            for (double v : values) {
+                sum += v;
+            }
+        }
+    }
+
+    /**
+     * Returns a value by age.
+     *
+     * @param index 0 for the oldest value, {@code size() - 1} for the newest
+     * @return the value
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " for window of size " + size);
+        }
+        return values[(start + index) % values.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * Returns the average of the values in the window, or 0 if it is empty.
+     *
+     * @return the average
+     */
+    public double average() {
+        return size == 0 ? 0 : sum / size;
+    }
+
+    /**
+     * Changes the capacity, keeping the newest values that still fit.
+     *
+     * @param capacity the new number of most recent values the window keeps
+     */
+    public void resize(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        if (capacity == values.length) {
+            return;
+        }
+        int kept = Math.min(size, capacity);
+        double[] resized = new double[capacity];
+        sum = 0;
+        for (int i = 0; i < kept; i++) {
+            resized[i] = get(size - kept + i);
+            sum += resized[i];
+        }
+        values = resized;
+        start = 0;
+        size = kept;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+        sum = 0;
+        Arrays.fill(values, 0);
+    }
+
+    /**
+     * Formats the values oldest first, like {@code List.toString()}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(get(i));
+        }
+        return text.append(']').toString();
+    }
+}
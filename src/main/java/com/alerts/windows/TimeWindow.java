@@ -0,0 +1,188 @@
+package com.alerts.windows;
+
+/**
+ * A time-based sliding window over the values of the last {@code spanMillis}
+ * milliseconds, with O(1) access to the oldest value, the sum and average,
+ * and (through {@link MonotonicDeque}s) the minimum and maximum. Values are
+ * kept in primitive ring arrays that grow to the largest number of values
+ * ever in the window and are reused afterwards, so steady-state use
+ * allocates nothing.
+ * <p>
+ * Values must be added in non-decreasing timestamp order; callers that can
+ * see late values check {@link #newestTimestamp()} first. Not thread-safe.
+ */
+public final class TimeWindow {
+    private long spanMillis;
+    private final MonotonicDeque min = new MonotonicDeque(false);
+    private final MonotonicDeque max = new MonotonicDeque(true);
+    private long[] timestamps = new long[16];
+    private double[] values = new double[16];
+    private int head;
+    private int size;
+    private double sum;
+
+    /**
+     * Creates an empty window.
+     *
+     * @param spanMillis how far back from the newest value the window reaches
+     */
+    public TimeWindow(long spanMillis) {
+        if (spanMillis < 0) {
+            throw new IllegalArgumentException("Span must not be negative");
+        }
+        this.spanMillis = spanMillis;
+    }
+
+    /**
+     * Evicts the values that fall out of the window at the given time, that
+     * is, those older than {@code timestamp - spanMillis}.
+     *
+     * @param timestamp the current time
+     */
+    public void advanceTo(long timestamp) {
+        long earliest = timestamp - spanMillis;
+        while (size > 0 && timestamps[head] < earliest) {
+            sum -= values[head];
+            head = (head + 1) % values.length;
+            size--;
+        }
+        if (size == 0) {
+            sum = 0; // drop accumulated rounding errors
+        }
+        min.evictBefore(earliest);
+        max.evictBefore(earliest);
+    }
+
+    /**
+     * Moves the window to the given time and adds a value.
+     *
+     * @param timestamp the time of the value
+     * @param value     the value
+     * @throws IllegalArgumentException if the timestamp is older than the
+     *                                  newest value in the window
+     */
+    public void add(long timestamp, double value) {
+        if (size > 0 && timestamp < newestTimestamp()) {
+            throw new IllegalArgumentException("Timestamp " + timestamp + " is older than the newest value");
+        }
+        advanceTo(timestamp);
+        if (size == values.length) {
+            grow();
+        }
+        int slot = (head + size) % values.length;
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        size++;
+        sum += value;
+        min.push(timestamp, value);
+        max.push(timestamp, value);
+    }
+
+    /**
+     * Changes how far back the window reaches. A shorter span takes effect
+     * at the next {@link #advanceTo}; a longer one cannot bring back values
+     * that were already evicted.
+     *
+     * @param spanMillis how far back from the newest value the window reaches
+     */
+    public void setSpanMillis(long spanMillis) {
+        if (spanMillis < 0) {
+            throw new IllegalArgumentException("Span must not be negative");
+        }
+        this.spanMillis = spanMillis;
+    }
+
+    public long getSpanMillis() {
+        return spanMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the oldest value in the window.
+     *
+     * @return the value
+     * @throws IllegalStateException if the window is empty
+     */
+    public double oldestValue() {
+        checkNotEmpty();
+        return values[head];
+    }
+
+    /**
+     * Returns the timestamp of the oldest value in the window.
+     *
+     * @return the timestamp
+     * @throws IllegalStateException if the window is empty
+     */
+    public long oldestTimestamp() {
+        checkNotEmpty();
+        return timestamps[head];
+    }
+
+    /**
+     * Returns the timestamp of the newest value in the window.
+     *
+     * @return the timestamp
+     * @throws IllegalStateException if the window is empty
+     */
+    public long newestTimestamp() {
+        checkNotEmpty();
+        return timestamps[(head + size - 1) % values.length];
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * Returns the average of the values in the window, or 0 if it is empty.
+     *
+     * @return the average
+     */
+    public double average() {
+        return size == 0 ? 0 : sum / size;
+    }
+
+    public double min() {
+        checkNotEmpty();
+        return min.peek();
+    }
+
+    public double max() {
+        checkNotEmpty();
+        return max.peek();
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        sum = 0;
+        min.clear();
+        max.clear();
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new IllegalStateException("Empty window");
+        }
+    }
+
+    private void grow() {
+        long[] newTimestamps = new long[timestamps.length * 2];
+        double[] newValues = new double[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimestamps[i] = timestamps[(head + i) % values.length];
+            newValues[i] = values[(head + i) % values.length];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,210 @@
+package com.cardio_generator.outputs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.data_management.BinaryRecordFormat;
+
+/**
+ * Implements {@link OutputStrategy} and writes the data of the patients
+ * to a file in the compact {@link BinaryRecordFormat}, which is much smaller
+ * than the text files of {@link FileOutputStrategy} and faster to load.
+ * Records are collected in memory and written as one block (with an entry in
+ * the block index) every {@value #BLOCK_RECORDS} records or every second.
+ * A block that cannot be written is cut off again and retried on the next
+ * flush; at most {@value #MAX_UNWRITTEN_BLOCKS} such blocks are kept.
+ * <p>
+ * When the files already exist, a block torn by an earlier crash is cut off
+ * before appending, see {@link BinaryRecordFormat#repair}. The last block is
+ * written by {@link #close()}, which also runs at JVM shutdown.
+ */
+public class BinaryFileOutputStrategy implements OutputStrategy, AutoCloseable {
+    private static final int BLOCK_RECORDS = 4096;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int MAX_UNWRITTEN_BLOCKS = 64;
+
+    private final BinaryRecordFormat.BlockEncoder encoder = new BinaryRecordFormat.BlockEncoder();
+    private final Deque<ByteBuffer> unwritten = new ArrayDeque<>(); // encoded blocks whose write failed
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private ScheduledExecutorService flusher;
+    private Thread shutdownHook;
+
+    /**
+     * Constructs a {@code BinaryFileOutputStrategy} that appends to the record
+     * file in the given directory.
+     * @param baseDirectory the directory that the files will be stored
+     */
+    public BinaryFileOutputStrategy(String baseDirectory) {
+        try {
+            Files.createDirectories(Paths.get(baseDirectory));
+            dataChannel = FileChannel.open(Paths.get(baseDirectory, BinaryRecordFormat.DATA_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(Paths.get(baseDirectory, BinaryRecordFormat.INDEX_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long discarded = BinaryRecordFormat.repair(dataChannel, indexChannel);
+            if (discarded > 0) {
+                System.err.println("Discarded " + discarded + " bytes of a torn block in " + baseDirectory);
+            }
+            dataChannel.position(dataChannel.size()); // append from here on
+            indexChannel.position(indexChannel.size());
+        } catch (IOException e) {
+            System.err.println("Error opening binary output in " + baseDirectory + ": " + e.getMessage());
+            closeChannels();
+            return;
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "binary-output-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        shutdownHook = new Thread(this::close, "binary-output-close");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Adds the data for the given patient to the current block. Data that is
+     * not numeric (after removing '%' signs) is stored as 0.0 for alerts and
+     * skipped otherwise, the same way the file readers treat it.
+     * @param patientId the Id for the specific patient
+     * @param timestamp the time that the data was generated
+     * @param label the label that describes the type of data
+     * @param data the data that needs to be stored
+     */
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = Double.parseDouble(data.trim().replace("%", ""));
+        } catch (NumberFormatException e) {
+            if (!label.equalsIgnoreCase("Alert") && !label.equalsIgnoreCase("ManualAlert")) {
+                System.err.println("Skipping non-numeric data for " + label + ": " + data);
+                return;
+            }
+            value = 0.0;
+        }
+        synchronized (this) {
+            if (dataChannel == null) {
+                return; // not open or already closed
+            }
+            encoder.add(patientId, label, timestamp, value);
+            if (encoder.size() >= BLOCK_RECORDS) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the records collected so far as one block.
+     */
+    public synchronized void flush() {
+        if (dataChannel == null) {
+            return;
+        }
+        if (!encoder.isEmpty()) {
+            if (unwritten.size() == MAX_UNWRITTEN_BLOCKS) {
+                unwritten.removeFirst();
+                System.err.println("Binary output keeps failing, dropped the oldest unwritten block");
+            }
+            unwritten.addLast(encoder.finish());
+        }
+        while (!unwritten.isEmpty() && writeBlock(unwritten.peekFirst())) {
+            unwritten.removeFirst();
+        }
+    }
+
+    /**
+     * Appends a block and its index entry. If either write fails, both files
+     * are truncated back to where they were, so the data file stays block
+     * aligned and the index matches it, and the block is kept for the next
+     * flush.
+     *
+     * @return whether the block was written
+     */
+    private boolean writeBlock(ByteBuffer block) {
+        long offset = -1;
+        long indexSize = -1;
+        try {
+            offset = dataChannel.size();
+            indexSize = indexChannel.size();
+            ByteBuffer data = block.duplicate();
+            while (data.hasRemaining()) {
+                dataChannel.write(data);
+            }
+            ByteBuffer entry = BinaryRecordFormat.indexEntry(offset, block);
+            while (entry.hasRemaining()) {
+                indexChannel.write(entry);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing binary output, retrying on the next flush: " + e.getMessage());
+            try {
+                if (offset >= 0) {
+                    dataChannel.truncate(offset);
+                }
+                if (indexSize >= 0) {
+                    indexChannel.truncate(indexSize);
+                }
+            } catch (IOException truncateError) {
+                System.err.println("Error truncating binary output: " + truncateError.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Writes the last block, forces both files to disk and closes them.
+     * Records output afterwards are ignored.
+     */
+    @Override
+    public synchronized void close() {
+        if (dataChannel == null) {
+            return;
+        }
+        flusher.shutdownNow();
+        flush();
+        if (!unwritten.isEmpty()) {
+            System.err.println("Closing binary output with " + unwritten.size() + " unwritten blocks");
+        }
+        try {
+            dataChannel.force(true);
+            indexChannel.force(true);
+        } catch (IOException e) {
+            System.err.println("Error forcing binary output to disk: " + e.getMessage());
+        }
+        closeChannels();
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down, the hook finds the files closed
+            }
+        }
+    }
+
+    private void closeChannels() {
+        for (FileChannel channel : new FileChannel[] {dataChannel, indexChannel}) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Error closing binary output: " + e.getMessage());
+            }
+        }
+        dataChannel = null;
+        indexChannel = null;
+    }
+}
@@ -3,25 +3,146 @@ package com.cardio_generator.outputs;
 import org.java_websocket.WebSocket;
 import org.java_websocket.server.WebSocketServer;
 
+import com.data_management.BinaryRecordFormat;
+
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements {@link OutputStrategy} and streams the data of the patients to
+ * WebSocket clients.
+ * <p>
+ * By default every record is sent as its own text frame
+ * ("patientId,timestamp,label,data"). Clients that connect with
+ * {@code ?framing=binary} in the URI instead receive binary frames that each
+ * carry many records as one {@link BinaryRecordFormat} block. A frame is sent
+ * once it holds {@value #DEFAULT_FRAME_RECORDS} records or when the flush
+ * interval has passed, whichever comes first. {@link #close()} sends the last
+ * frame and stops the flush thread and the server.
+ */
+public class WebSocketOutputStrategy implements OutputStrategy, AutoCloseable {
+    /** Query parameter a client adds to its URI to receive binary frames. */
+    public static final String BINARY_FRAMING = "framing=binary";
 
-public class WebSocketOutputStrategy implements OutputStrategy {
+    private static final int DEFAULT_FRAME_RECORDS = 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+    private static final int STOP_TIMEOUT_MILLIS = 1000;
 
+    private final int frameRecords;
+    private final BinaryRecordFormat.BlockEncoder encoder = new BinaryRecordFormat.BlockEncoder();
     private WebSocketServer server;
+    private final ScheduledExecutorService flusher;
 
     public WebSocketOutputStrategy(int port) {
+        this(port, DEFAULT_FRAME_RECORDS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a {@code WebSocketOutputStrategy} with the given thresholds
+     * for binary frames.
+     * @param port the port to listen on
+     * @param frameRecords the number of records after which a binary frame is sent
+     * @param flushIntervalMillis the longest time a record waits in a binary frame
+     */
+    public WebSocketOutputStrategy(int port, int frameRecords, long flushIntervalMillis) {
+        this.frameRecords = frameRecords;
         server = new SimpleWebSocketServer(new InetSocketAddress(port));
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
         server.start();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "websocket-output-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-        // Broadcast the message to all connected clients
+        boolean binaryClients = false;
+        String message = null;
+        for (WebSocket conn : server.getConnections()) {
+            if (isBinary(conn)) {
+                binaryClients = true;
+            } else {
+                if (message == null) {
+                    message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
+                }
+                conn.send(message);
+            }
+        }
+        if (binaryClients) {
+            addToFrame(patientId, timestamp, label, data);
+        }
+    }
+
+    /**
+     * Sends the records collected so far as one binary frame to the clients
+     * that negotiated binary framing.
+     */
+    public synchronized void flush() {
+        if (encoder.isEmpty()) {
+            return;
+        }
+        ByteBuffer frame = encoder.finish();
+        List<WebSocket> receivers = new ArrayList<>();
         for (WebSocket conn : server.getConnections()) {
-            conn.send(message);
+            if (isBinary(conn)) {
+                receivers.add(conn);
+            }
         }
+        if (!receivers.isEmpty()) {
+            server.broadcast(frame, receivers);
+        }
+    }
+
+    /**
+     * Sends the records collected so far, then stops the flush thread and
+     * the server, closing every client connection.
+     */
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+        flush();
+        try {
+            server.stop(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds a record to the current binary frame. Data that is not numeric
+     * (after removing '%' signs) is sent as 0.0 for alerts and skipped
+     * otherwise, the same way the readers treat it.
+     */
+    private void addToFrame(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = Double.parseDouble(data.trim().replace("%", ""));
+        } catch (NumberFormatException e) {
+            if (!label.equalsIgnoreCase("Alert") && !label.equalsIgnoreCase("ManualAlert")) {
+                return;
+            }
+            value = 0.0;
+        }
+        synchronized (this) {
+            encoder.add(patientId, label, timestamp, value);
+            if (encoder.size() >= frameRecords) {
+                flush();
+            }
+        }
+    }
+
+    private static boolean isBinary(WebSocket conn) {
+        return Boolean.TRUE.equals(conn.getAttachment());
     }
 
     private static class SimpleWebSocketServer extends WebSocketServer {
@@ -32,6 +153,9 @@ public class WebSocketOutputStrategy implements OutputStrategy {
 
         @Override
         public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
+            // the framing is chosen once, in the handshake, so text clients keep working
+            String resource = handshake.getResourceDescriptor();
+            conn.setAttachment(resource != null && resource.contains(BINARY_FRAMING));
             System.out.println("New connection: " + conn.getRemoteSocketAddress());
         }
 
@@ -0,0 +1,70 @@
+package com.data_management;
+
+/**
+ * Summary of the samples of one series that fall into one time bucket, as
+ * returned by {@link DataStorage#getAggregates}.
+ */
+public class Aggregate {
+    private final long bucketStart;
+    private final Resolution resolution;
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final long count;
+
+    /**
+     * Constructs an aggregate for one bucket.
+     *
+     * @param bucketStart the start of the bucket in milliseconds since epoch
+     * @param resolution  the resolution the bucket belongs to
+     * @param min         the smallest value in the bucket
+     * @param max         the largest value in the bucket
+     * @param sum         the sum of all values in the bucket
+     * @param count       the number of samples in the bucket
+     */
+    public Aggregate(long bucketStart, Resolution resolution, double min, double max, double sum, long count) {
+        this.bucketStart = bucketStart;
+        this.resolution = resolution;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    /**
+     * Returns the end of the bucket, exclusive.
+     *
+     * @return the end of the bucket in milliseconds since epoch
+     */
+    public long getBucketEnd() {
+        return bucketStart + resolution.getWidthMillis();
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getAverage() {
+        return sum / count;
+    }
+}
@@ -0,0 +1,127 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads record files in the {@link BinaryRecordFormat}. Blocks are located
+ * through the index file and decoded straight into a {@link RecordBatch}.
+ * When a time range is given, blocks that lie entirely outside it are
+ * skipped without being read.
+ */
+public class BinaryFileDataReader implements BatchDataReader {
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private final String directory;
+    private final long startTime;
+    private final long endTime;
+
+    public BinaryFileDataReader(String directory) {
+        this(directory, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a reader that only loads records within a time range.
+     *
+     * @param directory the directory holding the binary record files
+     * @param startTime the start of the time range, in milliseconds since the
+     *                  Unix epoch
+     * @param endTime   the end of the time range, in milliseconds since the
+     *                  Unix epoch
+     */
+    public BinaryFileDataReader(String directory, long startTime, long endTime) {
+        this.directory = directory;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public void readData(DataStorage storage) throws IOException {
+        Path data = Paths.get(directory, BinaryRecordFormat.DATA_FILE);
+        if (!Files.isRegularFile(data)) {
+            System.err.println("No binary record file in: " + directory);
+            return;
+        }
+
+        RecordBatch batch = new RecordBatch(FLUSH_THRESHOLD);
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for (long[] block : blocks(channel)) {
+                long offset = block[0];
+                int length = (int) block[1];
+                if (block[3] < startTime || block[2] > endTime) {
+                    continue;
+                }
+                if (buffer.capacity() < length) {
+                    buffer = ByteBuffer.allocate(length);
+                }
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+                    // keep reading until the block is complete
+                }
+                buffer.flip();
+                try {
+                    BinaryRecordFormat.decodeBlock(buffer, batch, startTime, endTime);
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    System.err.println("Skipping corrupt block at " + offset + " in " + data);
+                }
+                if (batch.size() >= FLUSH_THRESHOLD) {
+                    storage.addPatientData(batch);
+                    batch.clear();
+                }
+            }
+        }
+        storage.addPatientData(batch);
+    }
+
+    /**
+     * Returns offset, length, min and max timestamp of every complete block,
+     * from the index file where possible and from the block headers for the
+     * part of the data file the index does not cover.
+     */
+    private List<long[]> blocks(FileChannel channel) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        long size = channel.size();
+        long covered = 0;
+
+        Path index = Paths.get(directory, BinaryRecordFormat.INDEX_FILE);
+        if (Files.isRegularFile(index)) {
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+            while (entries.remaining() >= BinaryRecordFormat.INDEX_ENTRY_BYTES) {
+                long offset = entries.getLong();
+                int length = entries.getInt();
+                entries.getInt(); // record count
+                long min = entries.getLong();
+                long max = entries.getLong();
+                if (offset != covered || offset + length > size) {
+                    break; // stale or torn index, scan the rest instead
+                }
+                blocks.add(new long[] {offset, length, min, max});
+                covered = offset + length;
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(BinaryRecordFormat.HEADER_BYTES);
+        while (covered + BinaryRecordFormat.HEADER_BYTES <= size) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, covered + header.position()) > 0) {
+                // keep reading until the header is complete
+            }
+            int length = header.getInt(4);
+            if (header.getInt(0) != BinaryRecordFormat.MAGIC || length < BinaryRecordFormat.HEADER_BYTES
+                    || covered + length > size) {
+                break; // torn last block
+            }
+            blocks.add(new long[] {covered, length, header.getLong(12), header.getLong(20)});
+            covered += length;
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,200 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * An immutable block of samples compressed the way Facebook's Gorilla
+ * time-series database does it. Timestamps are stored as delta-of-deltas,
+ * so samples at a fixed interval cost one bit each. Values are XORed with
+ * the previous value and only the meaningful bits are stored, so slowly
+ * changing vitals cost a few bits each instead of eight bytes.
+ * <p>
+ * The first and last timestamps are kept uncompressed, so a chunk can be
+ * skipped by a range query without decoding it.
+ */
+final class CompressedChunk {
+    private final long[] bits;
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    private CompressedChunk(long[] bits, int count, long firstTimestamp, long lastTimestamp) {
+        this.bits = bits;
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    /**
+     * Compresses {@code count} samples, sorted by timestamp, starting at
+     * {@code from} in the given arrays.
+     */
+    static CompressedChunk encode(long[] timestamps, double[] values, int from, int count) {
+        BitWriter out = new BitWriter(count);
+        long previousTimestamp = timestamps[from];
+        long previousDelta = 0;
+        long previousValue = Double.doubleToRawLongBits(values[from]);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        out.write(previousTimestamp, 64);
+        out.write(previousValue, 64);
+
+        for (int i = from + 1; i < from + count; i++) {
+            long delta = timestamps[i] - previousTimestamp;
+            long deltaOfDelta = delta - previousDelta;
+            if (deltaOfDelta == 0) {
+                out.write(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                out.write(0b10, 2);
+                out.write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                out.write(0b110, 3);
+                out.write(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                out.write(0b1110, 4);
+                out.write(deltaOfDelta + 2047, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(deltaOfDelta, 64);
+            }
+            previousTimestamp = timestamps[i];
+            previousDelta = delta;
+
+            long value = Double.doubleToRawLongBits(values[i]);
+            long xor = value ^ previousValue;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // fits in the previous window of meaningful bits
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(significant - 1, 6);
+                    out.write(xor >>> trailing, significant);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previousValue = value;
+        }
+        return new CompressedChunk(out.toArray(), count, timestamps[from], timestamps[from + count - 1]);
+    }
+
+    /**
+     * Decompresses all samples into the given arrays, starting at index 0.
+     */
+    void decode(long[] timestamps, double[] values) {
+        BitReader in = new BitReader(bits);
+        long timestamp = in.read(64);
+        long delta = 0;
+        long value = in.read(64);
+        int leading = 0;
+        int trailing = 0;
+        timestamps[0] = timestamp;
+        values[0] = Double.longBitsToDouble(value);
+
+        for (int i = 1; i < count; i++) {
+            long deltaOfDelta;
+            if (in.read(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(7) - 63;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(9) - 255;
+            } else if (in.read(1) == 0) {
+                deltaOfDelta = in.read(12) - 2047;
+            } else {
+                deltaOfDelta = in.read(64);
+            }
+            delta += deltaOfDelta;
+            timestamp += delta;
+            timestamps[i] = timestamp;
+
+            if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int) in.read(5);
+                    int significant = (int) in.read(6) + 1;
+                    trailing = 64 - leading - significant;
+                }
+                value ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(value);
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    private static long mask(int bitCount) {
+        return bitCount == 64 ? -1L : (1L << bitCount) - 1;
+    }
+
+    private static final class BitWriter {
+        private long[] words;
+        private int position;
+
+        private BitWriter(int samples) {
+            words = new long[Math.max(4, samples / 4)];
+        }
+
+        /**
+         * Writes the lowest {@code bitCount} bits of the value, most
+         * significant first.
+         */
+        private void write(long value, int bitCount) {
+            while (bitCount > 0) {
+                int word = position >>> 6;
+                if (word == words.length) {
+                    words = Arrays.copyOf(words, words.length * 2);
+                }
+                int free = 64 - (position & 63);
+                int take = Math.min(free, bitCount);
+                long chunk = (value >>> (bitCount - take)) & mask(take);
+                words[word] |= chunk << (free - take);
+                position += take;
+                bitCount -= take;
+            }
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(words, (position + 63) >>> 6);
+        }
+    }
+
+    private static final class BitReader {
+        private final long[] words;
+        private int position;
+
+        private BitReader(long[] words) {
+            this.words = words;
+        }
+
+        private long read(int bitCount) {
+            long result = 0;
+            while (bitCount > 0) {
+                int free = 64 - (position & 63);
+                int take = Math.min(free, bitCount);
+                long chunk = (words[position >>> 6] >>> (free - take)) & mask(take);
+                result = take == 64 ? chunk : (result << take) | chunk;
+                position += take;
+                bitCount -= take;
+            }
+            return result;
+        }
+    }
+}
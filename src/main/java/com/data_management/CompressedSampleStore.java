@@ -0,0 +1,329 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sample store that keeps older samples in sealed {@link CompressedChunk}s
+ * and only the newest chunk uncompressed. Appends and reads of recent data
+ * touch the uncompressed tail; reading older data decodes only the chunks
+ * that overlap the requested range. Chunks are located by their first and
+ * last timestamps, so a binary search decodes at most one chunk. Range scans
+ * go through {@link #read} and {@link #forEach}, which decode every chunk
+ * once per call, so a scan never depends on the cache below.
+ * <p>
+ * Decoded chunks are cached in {@value #CACHE_SLOTS} slots shared by every
+ * compressed store, so the cache costs at most about
+ * {@value #CACHE_SLOTS} &times; 4 KB no matter how many series have been
+ * read. Slots are picked by chunk identity. Cache entries are immutable and
+ * published through an atomic array, so readers holding the series' read
+ * lock can share them safely.
+ * <p>
+ * Late samples that fall into a sealed chunk cause that one chunk to be
+ * decoded and re-encoded. Evicting the oldest samples drops whole chunks once
+ * all their samples are gone.
+ */
+final class CompressedSampleStore implements SampleStore {
+    static final int CHUNK_SAMPLES = 256;
+    static final int CACHE_SLOTS = 64; // a power of two
+
+    private static final AtomicReferenceArray<DecodedChunk> DECODED = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private final List<CompressedChunk> chunks = new ArrayList<>();
+    private int[] chunkEnds = new int[8]; // cumulative sample count at the end of each chunk
+    private int skipped;                  // samples evicted from the front of the first chunk
+    private long[] tailTimestamps = new long[CHUNK_SAMPLES];
+    private double[] tailValues = new double[CHUNK_SAMPLES];
+    private int tailSize;
+
+    @Override
+    public int size() {
+        return sealedSamples() - skipped + tailSize;
+    }
+
+    @Override
+    public long timestampAt(int index) {
+        int raw = index + skipped;
+        int sealed = sealedSamples();
+        if (raw >= sealed) {
+            return tailTimestamps[raw - sealed];
+        }
+        int chunk = chunkOf(raw);
+        return decode(chunk).timestamps[raw - chunkStart(chunk)];
+    }
+
+    @Override
+    public double valueAt(int index) {
+        int raw = index + skipped;
+        int sealed = sealedSamples();
+        if (raw >= sealed) {
+            return tailValues[raw - sealed];
+        }
+        int chunk = chunkOf(raw);
+        return decode(chunk).values[raw - chunkStart(chunk)];
+    }
+
+    /**
+     * Copies the samples of at most one chunk, or of the tail. A whole chunk
+     * that fits the arrays is decoded straight into them.
+     */
+    @Override
+    public int read(int from, int to, long[] timestamps, double[] values) {
+        int raw = from + skipped;
+        int sealed = sealedSamples();
+        if (raw >= sealed) {
+            int count = Math.min(to - from, timestamps.length);
+            System.arraycopy(tailTimestamps, raw - sealed, timestamps, 0, count);
+            System.arraycopy(tailValues, raw - sealed, values, 0, count);
+            return count;
+        }
+        int chunk = chunkOf(raw);
+        int offset = raw - chunkStart(chunk);
+        CompressedChunk sealedChunk = chunks.get(chunk);
+        int count = Math.min(Math.min(to - from, timestamps.length), sealedChunk.count() - offset);
+        if (offset == 0 && count == sealedChunk.count()) {
+            sealedChunk.decode(timestamps, values);
+        } else {
+            DecodedChunk samples = decode(chunk);
+            System.arraycopy(samples.timestamps, offset, timestamps, 0, count);
+            System.arraycopy(samples.values, offset, values, 0, count);
+        }
+        return count;
+    }
+
+    @Override
+    public void forEach(int from, int to, SampleConsumer consumer) {
+        int raw = from + skipped;
+        int rawEnd = to + skipped;
+        int sealed = sealedSamples();
+        while (raw < rawEnd && raw < sealed) {
+            int chunk = chunkOf(raw);
+            int start = chunkStart(chunk);
+            DecodedChunk samples = decode(chunk); // held for the whole chunk, even if the cache moves on
+            int end = Math.min(rawEnd, start + samples.timestamps.length);
+            for (; raw < end; raw++) {
+                consumer.accept(samples.timestamps[raw - start], samples.values[raw - start]);
+            }
+        }
+        for (; raw < rawEnd; raw++) {
+            consumer.accept(tailTimestamps[raw - sealed], tailValues[raw - sealed]);
+        }
+    }
+
+    @Override
+    public void append(long timestamp, double value) {
+        if (tailSize >= CHUNK_SAMPLES) {
+            seal();
+        }
+        if (tailSize == tailTimestamps.length) {
+            growTail();
+        }
+        tailTimestamps[tailSize] = timestamp;
+        tailValues[tailSize] = value;
+        tailSize++;
+    }
+
+    @Override
+    public void insert(int index, long timestamp, double value) {
+        int raw = index + skipped;
+        int sealed = sealedSamples();
+        if (raw >= sealed || chunks.isEmpty()) {
+            insertIntoTail(raw - sealed, timestamp, value);
+            return;
+        }
+
+        int chunk = chunkOf(raw);
+        DecodedChunk samples = decode(chunk);
+        int count = samples.timestamps.length;
+        int offset = raw - chunkStart(chunk);
+        long[] timestamps = new long[count + 1];
+        double[] values = new double[count + 1];
+        System.arraycopy(samples.timestamps, 0, timestamps, 0, offset);
+        System.arraycopy(samples.values, 0, values, 0, offset);
+        timestamps[offset] = timestamp;
+        values[offset] = value;
+        System.arraycopy(samples.timestamps, offset, timestamps, offset + 1, count - offset);
+        System.arraycopy(samples.values, offset, values, offset + 1, count - offset);
+
+        chunks.set(chunk, CompressedChunk.encode(timestamps, values, 0, count + 1));
+        for (int i = chunk; i < chunks.size(); i++) {
+            chunkEnds[i]++;
+        }
+    }
+
+    @Override
+    public int removeFirst(int count) {
+        int removed = Math.min(count, size());
+        skipped += removed;
+
+        int dropped = 0;
+        while (dropped < chunks.size() && chunkEnds[dropped] <= skipped) {
+            dropped++;
+        }
+        if (dropped > 0) {
+            int droppedSamples = chunkEnds[dropped - 1];
+            chunks.subList(0, dropped).clear();
+            for (int i = 0; i < chunks.size(); i++) {
+                chunkEnds[i] = chunkEnds[i + dropped] - droppedSamples;
+            }
+            skipped -= droppedSamples;
+        }
+        if (chunks.isEmpty() && skipped > 0) {
+            // the evicted samples reach into the uncompressed tail
+            tailSize -= skipped;
+            System.arraycopy(tailTimestamps, skipped, tailTimestamps, 0, tailSize);
+            System.arraycopy(tailValues, skipped, tailValues, 0, tailSize);
+            skipped = 0;
+        }
+        return removed;
+    }
+
+    @Override
+    public int lowerBound(long timestamp) {
+        // first chunk that ends at or after the timestamp holds the answer
+        int low = 0;
+        int high = chunks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.get(mid).lastTimestamp() < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < chunks.size()) {
+            long[] timestamps = decode(low).timestamps;
+            int offset = search(timestamps, timestamps.length, timestamp, false);
+            return Math.max(0, chunkStart(low) + offset - skipped);
+        }
+        return sealedSamples() - skipped + search(tailTimestamps, tailSize, timestamp, false);
+    }
+
+    @Override
+    public int upperBound(long timestamp) {
+        int low = 0;
+        int high = chunks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.get(mid).lastTimestamp() <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < chunks.size()) {
+            long[] timestamps = decode(low).timestamps;
+            int offset = search(timestamps, timestamps.length, timestamp, true);
+            return Math.max(0, chunkStart(low) + offset - skipped);
+        }
+        return sealedSamples() - skipped + search(tailTimestamps, tailSize, timestamp, true);
+    }
+
+    private void seal() {
+        if (chunks.size() == chunkEnds.length) {
+            chunkEnds = Arrays.copyOf(chunkEnds, chunkEnds.length * 2);
+        }
+        chunkEnds[chunks.size()] = sealedSamples() + tailSize;
+        chunks.add(CompressedChunk.encode(tailTimestamps, tailValues, 0, tailSize));
+        if (tailTimestamps.length > CHUNK_SAMPLES) {
+            tailTimestamps = new long[CHUNK_SAMPLES];
+            tailValues = new double[CHUNK_SAMPLES];
+        }
+        tailSize = 0;
+    }
+
+    private void insertIntoTail(int offset, long timestamp, double value) {
+        if (tailSize == tailTimestamps.length) {
+            growTail();
+        }
+        System.arraycopy(tailTimestamps, offset, tailTimestamps, offset + 1, tailSize - offset);
+        System.arraycopy(tailValues, offset, tailValues, offset + 1, tailSize - offset);
+        tailTimestamps[offset] = timestamp;
+        tailValues[offset] = value;
+        tailSize++;
+    }
+
+    private void growTail() {
+        tailTimestamps = Arrays.copyOf(tailTimestamps, tailTimestamps.length * 2);
+        tailValues = Arrays.copyOf(tailValues, tailValues.length * 2);
+    }
+
+    private int sealedSamples() {
+        return chunks.isEmpty() ? 0 : chunkEnds[chunks.size() - 1];
+    }
+
+    private int chunkStart(int chunk) {
+        return chunk == 0 ? 0 : chunkEnds[chunk - 1];
+    }
+
+    /**
+     * Returns the chunk holding the sample at the given raw index, which
+     * counts evicted samples of the first chunk too.
+     */
+    private int chunkOf(int raw) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunkEnds[mid] <= raw) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary-searches the first {@code length} timestamps for the lower bound,
+     * or the upper bound if {@code upper} is set.
+     */
+    private static int search(long[] timestamps, int length, long timestamp, boolean upper) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (upper ? timestamps[mid] <= timestamp : timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the decoded samples of a chunk. Entries are matched by chunk
+     * identity, so an entry of another series, or of a chunk since evicted
+     * or re-encoded, is never mistaken for this one.
+     */
+    private DecodedChunk decode(int index) {
+        CompressedChunk chunk = chunks.get(index);
+        int hash = System.identityHashCode(chunk);
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SLOTS - 1);
+        DecodedChunk cached = DECODED.get(slot);
+        if (cached != null && cached.chunk == chunk) {
+            return cached;
+        }
+        long[] timestamps = new long[chunk.count()];
+        double[] values = new double[chunk.count()];
+        chunk.decode(timestamps, values);
+        cached = new DecodedChunk(chunk, timestamps, values);
+        DECODED.set(slot, cached);
+        return cached;
+    }
+
+    private static final class DecodedChunk {
+        private final CompressedChunk chunk;
+        private final long[] timestamps;
+        private final double[] values;
+
+        private DecodedChunk(CompressedChunk chunk, long[] timestamps, double[] values) {
+            this.chunk = chunk;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package com.data_management;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import com.alerts.AlertGenerator;
 
 /**
@@ -12,17 +22,52 @@ import com.alerts.AlertGenerator;
  * system.
  * This class serves as a repository for all patient records, organized by
  * patient IDs.
+ * <p>
+ * The storage is safe for concurrent ingestion and querying: patients are
+ * looked up in a {@link ConcurrentHashMap} without a global lock, and each
+ * patient locks only the record series being written or read.
+ * <p>
+ * How much history is kept is controlled by a {@link RetentionPolicy}. By
+ * default every sample is kept; with a bounded policy each series becomes a
+ * ring buffer and the oldest samples across all patients are evicted once the
+ * global sample budget is exceeded. Rollup buckets are bounded per series by
+ * the same policy, not by the budget, so they add a fixed cost per series.
+ * <p>
+ * Samples are kept on the heap, off-heap or compressed depending on the
+ * {@link StorageBackend}.
+ * <p>
+ * With a {@link WriteAheadLog} enabled every added sample is logged before it
+ * is stored, and periodic checkpoints write a {@link StorageSnapshot} and drop
+ * the log segments it covers. Setting the {@code cardio.storage.dir} system
+ * property makes {@link #getInstance()} recover from that directory with a
+ * {@link RecoveryDataReader} and keep logging to it.
+ * <p>
+ * {@link SampleListener}s are told about every added sample as soon as it is
+ * stored, so consumers such as alert evaluation can process new data without
+ * re-reading history. A listener that throws is counted and skipped; it
+ * never costs the storage a sample.
  */
 public class DataStorage {
     private static DataStorage instance; // Singleton instance
-    private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    private final ConcurrentMap<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    private final RetentionStats retentionStats = new RetentionStats();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private volatile RetentionPolicy retentionPolicy = RetentionPolicy.unbounded();
+    private volatile StorageBackend storageBackend = StorageBackend.fromSystemProperty();
+    private volatile WriteAheadLog writeAheadLog;
+    private volatile SampleListener[] listeners = new SampleListener[0];
+    private final LongAdder listenerFailures = new LongAdder();
+    private ScheduledExecutorService checkpointer;
+
+    private static final long COMMIT_INTERVAL_MILLIS = 5;
+    private static final long CHECKPOINT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
     /**
      * Constructs a new instance of DataStorage, initializing the underlying storage
      * structure.
      */
     private DataStorage(BatchDataReader reader) {
-        this.patientMap = new HashMap<>();
+        this.patientMap = new ConcurrentHashMap<>();
         try {
             reader.readData(this); // auto-load data
         } catch (IOException e) {
@@ -36,11 +81,23 @@ public class DataStorage {
      *
      * @return the singleton instance
      */
-    public static DataStorage getInstance() {
+    public static synchronized DataStorage getInstance() {
         if (instance == null) {
             String path = "output";
             BatchDataReader reader = new FileDataReader(path);
-            instance = new DataStorage(reader);
+            String storeDir = System.getProperty("cardio.storage.dir");
+            if (storeDir == null) {
+                instance = new DataStorage(reader);
+            } else {
+                Path directory = Paths.get(storeDir);
+                instance = new DataStorage(new RecoveryDataReader(directory, reader));
+                try {
+                    instance.enableWriteAheadLog(directory, CHECKPOINT_INTERVAL_MILLIS);
+                    instance.checkpoint(); // compacts the replayed tail and any imported files
+                } catch (IOException e) {
+                    System.err.println("Error opening write-ahead log in " + storeDir + ": " + e.getMessage());
+                }
+            }
         }
         return instance;
     }
@@ -51,16 +108,163 @@ public class DataStorage {
      * @param reader the DataReader to initialize with
      * @return a new instance replacing the previous one
      */
-    public static DataStorage forceNewInstance(BatchDataReader reader) {
+    public static synchronized DataStorage forceNewInstance(BatchDataReader reader) {
         instance = new DataStorage(reader);
         return instance;
     }
 
+    /**
+     * Starts logging every added sample to a write-ahead log in the given
+     * directory and takes a checkpoint at the given interval. Samples already
+     * in the storage are only made durable by the next checkpoint.
+     *
+     * @param directory                the directory for log segments and
+     *                                 snapshots
+     * @param checkpointIntervalMillis how often to write a snapshot, or 0 to
+     *                                 checkpoint only on request
+     * @throws IOException if the log cannot be opened
+     */
+    public synchronized void enableWriteAheadLog(Path directory, long checkpointIntervalMillis) throws IOException {
+        closeWriteAheadLog();
+        writeAheadLog = new WriteAheadLog(directory, COMMIT_INTERVAL_MILLIS, false);
+        if (checkpointIntervalMillis > 0) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "storage-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointer.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint();
+                } catch (IOException e) {
+                    System.err.println("Error writing storage snapshot: " + e.getMessage());
+                }
+            }, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the storage and deletes the log segments and older
+     * snapshots it makes obsolete, so that recovery only replays what was
+     * logged since. Does nothing if no write-ahead log is enabled.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        WriteAheadLog wal = writeAheadLog;
+        if (wal == null) {
+            return;
+        }
+        Path directory = wal.getDirectory();
+        // samples are logged under their series lock, so the snapshot holds each
+        // series exactly up to the log position it records; the previous segment
+        // is still replayed on top, which skips what the snapshot already covers
+        long segment = wal.rotate() - 1;
+        Path snapshot = StorageSnapshot.write(this, directory, segment); // durable once this returns
+        for (Path old : StorageSnapshot.snapshots(directory)) {
+            if (!old.equals(snapshot)) {
+                Files.deleteIfExists(old);
+            }
+        }
+        for (Path old : WriteAheadLog.segments(directory)) {
+            if (WriteAheadLog.segmentNumber(old) < segment) {
+                Files.deleteIfExists(old);
+            }
+        }
+    }
+
+    /**
+     * Commits everything logged so far to disk. Samples are otherwise
+     * committed every few milliseconds.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void syncWriteAheadLog() throws IOException {
+        WriteAheadLog wal = writeAheadLog;
+        if (wal != null) {
+            wal.sync();
+        }
+    }
+
+    /**
+     * Stops periodic checkpoints, commits pending log entries and closes the
+     * write-ahead log. Samples added afterwards are no longer logged.
+     *
+     * @throws IOException if the final commit fails
+     */
+    public synchronized void closeWriteAheadLog() throws IOException {
+        if (checkpointer != null) {
+            checkpointer.shutdownNow();
+            checkpointer = null;
+        }
+        WriteAheadLog wal = writeAheadLog;
+        writeAheadLog = null;
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
     /**
      * Clears all stored patient data.
      */
     public void reset() {
         patientMap.clear();
+        retentionStats.reset();
+    }
+
+    /**
+     * Sets the retention policy for all current and future patients. Existing
+     * history is trimmed to the new limits right away.
+     *
+     * @param policy the retention policy to apply
+     */
+    public void setRetentionPolicy(RetentionPolicy policy) {
+        retentionPolicy = policy;
+        for (Patient patient : patientMap.values()) {
+            patient.configureRetention(policy, retentionStats);
+        }
+        enforceTotalLimit();
+    }
+
+    /**
+     * Sets where samples of series created from now on are kept. Series that
+     * already exist keep their backend, so this is best called before data is
+     * loaded or through the {@code cardio.storage.backend} system property.
+     *
+     * @param backend the storage backend for new series
+     */
+    public void setStorageBackend(StorageBackend backend) {
+        storageBackend = backend;
+        for (Patient patient : patientMap.values()) {
+            patient.setStorageBackend(backend);
+        }
+    }
+
+    /**
+     * Returns the storage backend used for new series.
+     *
+     * @return the storage backend
+     */
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    /**
+     * Returns the retention policy currently in effect.
+     *
+     * @return the retention policy
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Returns the counters of stored and evicted samples.
+     *
+     * @return the retention statistics of this storage
+     */
+    public RetentionStats getRetentionStats() {
+        return retentionStats;
     }
 
     /**
@@ -77,12 +281,274 @@ public class DataStorage {
      *                         milliseconds since the Unix epoch
      */
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, RecordTypes.idOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds patient data for a record type that was already resolved through
+     * {@link RecordTypes}, skipping the label lookup.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordTypeId     the record type id from {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        Patient patient = storePatientData(patientId, measurementValue, recordTypeId, timestamp, writeAheadLog);
+        for (SampleListener listener : listeners) {
+            notifyListener(listener, patient, recordTypeId, timestamp, measurementValue);
+        }
+    }
+
+    /**
+     * Adds every record of a batch. Consecutive records of the same patient
+     * share one patient lookup, and the global sample budget is enforced once
+     * per batch rather than per record, which makes this the preferred entry
+     * point for bulk loads.
+     *
+     * @param batch the records to add, in the order they were read
+     */
+    public void addPatientData(RecordBatch batch) {
+        try {
+            addPatientData(batch, 0);
+        } catch (BatchFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Adds the records of a batch from the given index on. A record that
+     * cannot be stored stops the batch; the records before it stay stored.
+     *
+     * @param batch the records to add, in the order they were read
+     * @param from  the index of the first record to add
+     * @throws BatchFailure if a record could not be stored, telling which
+     */
+    void addPatientData(RecordBatch batch, int from) {
+        WriteAheadLog wal = writeAheadLog;
+        SampleListener[] listeners = this.listeners;
+        Patient patient = null;
+        int i = from;
+        try {
+            for (; i < batch.size(); i++) {
+                int patientId = batch.getPatientId(i);
+                int recordTypeId = batch.getRecordTypeId(i);
+                long timestamp = batch.getTimestamp(i);
+                double value = batch.getMeasurementValue(i);
+                if (patient == null || patient.getPatientId() != patientId) {
+                    patient = patientMap.get(patientId);
+                    if (patient == null) {
+                        patient = patientMap.computeIfAbsent(patientId, this::createPatient);
+                    }
+                }
+                patient.append(value, recordTypeId, timestamp, wal); // logged under the series lock
+                for (SampleListener listener : listeners) {
+                    notifyListener(listener, patient, recordTypeId, timestamp, value);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new BatchFailure(i, e);
+        } finally {
+            if (retentionPolicy.hasTotalLimit()
+                    && retentionStats.getStoredSamples() > retentionPolicy.getMaxTotalSamples()) {
+                enforceTotalLimit();
+            }
+        }
+    }
+
+    /**
+     * Replays a logged sample unless the snapshot the storage was restored
+     * from already covers its log position.
+     */
+    void restorePatientData(int patientId, double measurementValue, int recordTypeId, long timestamp,
+                            long position) {
+        Patient patient = patientMap.get(patientId);
+        if (patient == null) {
+            patient = patientMap.computeIfAbsent(patientId, this::createPatient);
+        }
+        patient.replay(measurementValue, recordTypeId, timestamp, position);
+        if (retentionPolicy.hasTotalLimit()
+                && retentionStats.getStoredSamples() > retentionPolicy.getMaxTotalSamples()) {
+            enforceTotalLimit();
+        }
+    }
+
+    /**
+     * Restores the log position of a series from a snapshot, so replay
+     * skips the samples logged before it.
+     */
+    void restoreLogPosition(int patientId, int recordTypeId, long position) {
         Patient patient = patientMap.get(patientId);
         if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+            patient = patientMap.computeIfAbsent(patientId, this::createPatient);
+        }
+        patient.setLogPosition(recordTypeId, position);
+    }
+
+    /**
+     * Stores a sample without logging it, for data that is already durable.
+     *
+     * @return the patient the sample was stored for
+     */
+    Patient loadPatientData(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        return storePatientData(patientId, measurementValue, recordTypeId, timestamp, null);
+    }
+
+    /**
+     * Stores a sample, logging it first if a write-ahead log is given.
+     */
+    private Patient storePatientData(int patientId, double measurementValue, int recordTypeId, long timestamp,
+                                     WriteAheadLog wal) {
+        Patient patient = patientMap.get(patientId);
+        if (patient == null) {
+            patient = patientMap.computeIfAbsent(patientId, this::createPatient);
+        }
+        patient.append(measurementValue, recordTypeId, timestamp, wal);
+        if (retentionPolicy.hasTotalLimit()
+                && retentionStats.getStoredSamples() > retentionPolicy.getMaxTotalSamples()) {
+            enforceTotalLimit();
+        }
+        return patient;
+    }
+
+    /**
+     * Registers a listener that is told about every sample added from now on.
+     *
+     * @param listener the listener to add
+     */
+    public synchronized void addSampleListener(SampleListener listener) {
+        SampleListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addSampleListener}.
+     *
+     * @param listener the listener to remove
+     */
+    public synchronized void removeSampleListener(SampleListener listener) {
+        List<SampleListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.toArray(new SampleListener[0]);
+    }
+
+    /**
+     * Returns how many listener calls threw. A failing listener does not stop
+     * the sample, or the rest of its batch, from being stored, nor the other
+     * listeners from being told.
+     *
+     * @return the number of failed listener calls
+     */
+    public long getListenerFailureCount() {
+        return listenerFailures.sum();
+    }
+
+    private void notifyListener(SampleListener listener, Patient patient, int recordTypeId, long timestamp, double value) {
+        try {
+            listener.onSample(patient, recordTypeId, timestamp, value);
+        } catch (RuntimeException e) {
+            listenerFailures.increment();
+            System.err.println("Sample listener failed: " + e);
+        }
+    }
+
+    private Patient createPatient(int patientId) {
+        Patient patient = new Patient(patientId);
+        patient.setStorageBackend(storageBackend);
+        patient.configureRetention(retentionPolicy, retentionStats);
+        return patient;
+    }
+
+    /**
+     * Evicts the oldest samples across all patients until the storage is back
+     * within its global budget. To avoid running an eviction pass on every
+     * append, each pass frees an extra 1/16 of the budget. The oldest series
+     * is cut in one run up to where the next oldest series starts, so a pass
+     * takes one series lock per run rather than per sample. Only one thread
+     * evicts at a time; others keep ingesting meanwhile.
+     */
+    private void enforceTotalLimit() {
+        RetentionPolicy policy = retentionPolicy;
+        if (!policy.hasTotalLimit() || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long budget = policy.getMaxTotalSamples();
+            long target = budget - budget / 16;
+            long excess = retentionStats.getStoredSamples() - target;
+            if (retentionStats.getStoredSamples() <= budget || excess <= 0) {
+                return;
+            }
+
+            PriorityQueue<EvictionCandidate> oldestFirst = new PriorityQueue<>();
+            for (Patient patient : patientMap.values()) {
+                for (TimeSeries series : patient.nonEmptySeries()) {
+                    long first = series.firstTimestamp();
+                    if (first != Long.MAX_VALUE) {
+                        oldestFirst.add(new EvictionCandidate(series, first));
+                    }
+                }
+            }
+            while (excess > 0 && !oldestFirst.isEmpty()) {
+                // evict the oldest series up to where the next one starts, in one run
+                EvictionCandidate candidate = oldestFirst.poll();
+                EvictionCandidate runnerUp = oldestFirst.peek();
+                long until = runnerUp == null ? Long.MAX_VALUE : runnerUp.firstTimestamp;
+                int removed = candidate.series.removeBefore(until, (int) Math.min(excess, Integer.MAX_VALUE));
+                retentionStats.recordTotalLimitEvictions(removed);
+                retentionStats.addStoredSamples(-removed);
+                excess -= removed;
+                long next = candidate.series.firstTimestamp();
+                if (next != Long.MAX_VALUE) {
+                    candidate.firstTimestamp = next;
+                    oldestFirst.add(candidate);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Thrown by {@link #addPatientData(RecordBatch, int)} when a record of the
+     * batch could not be stored.
+     */
+    static final class BatchFailure extends RuntimeException {
+        private final int index;
+
+        private BatchFailure(int index, RuntimeException cause) {
+            super(cause);
+            this.index = index;
+        }
+
+        /**
+         * Returns the index of the record that could not be stored.
+         */
+        int getIndex() {
+            return index;
+        }
+
+        @Override
+        public synchronized RuntimeException getCause() {
+            return (RuntimeException) super.getCause();
+        }
+    }
+
+    private static final class EvictionCandidate implements Comparable<EvictionCandidate> {
+        private final TimeSeries series;
+        private long firstTimestamp;
+
+        private EvictionCandidate(TimeSeries series, long firstTimestamp) {
+            this.series = series;
+            this.firstTimestamp = firstTimestamp;
+        }
+
+        @Override
+        public int compareTo(EvictionCandidate other) {
+            return Long.compare(firstTimestamp, other.firstTimestamp);
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
     }
 
     /**
@@ -106,6 +572,103 @@ public class DataStorage {
         return new ArrayList<>(); // return an empty list if no patient is found
     }
 
+    /**
+     * Passes the samples of one record type of a patient within a time range to
+     * the consumer, oldest first. Unlike {@link #getRecords}, nothing is copied
+     * or allocated per sample, which suits callers that only scan or aggregate.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param consumer   receives the samples
+     * @return the number of samples visited
+     */
+    public int forEach(int patientId, String recordType, long startTime, long endTime, SampleConsumer consumer) {
+        int recordTypeId = RecordTypes.find(recordType);
+        return recordTypeId < 0 ? 0 : forEach(patientId, recordTypeId, startTime, endTime, consumer);
+    }
+
+    /**
+     * Passes the samples of one record type of a patient within a time range to
+     * the consumer, for a record type already resolved through {@link RecordTypes}.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param startTime    the start of the time range, in milliseconds since the
+     *                     Unix epoch
+     * @param endTime      the end of the time range, in milliseconds since the
+     *                     Unix epoch
+     * @param consumer     receives the samples
+     * @return the number of samples visited
+     */
+    public int forEach(int patientId, int recordTypeId, long startTime, long endTime, SampleConsumer consumer) {
+        Patient patient = patientMap.get(patientId);
+        return patient == null ? 0 : patient.forEach(recordTypeId, startTime, endTime, consumer);
+    }
+
+    /**
+     * Retrieves min/max/average/count buckets of one record type of a patient.
+     * The buckets are updated on every {@link #addPatientData} call, so a long
+     * range costs a few hundred buckets instead of copying every raw record.
+     * Rollups keep their own history, so buckets remain available after the
+     * raw samples were evicted by the retention policy.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param resolution the bucket width
+     * @return the buckets overlapping the range, oldest first; empty if the
+     *         patient or record type is unknown
+     */
+    public List<Aggregate> getAggregates(int patientId, String recordType, long startTime, long endTime,
+            Resolution resolution) {
+        Patient patient = patientMap.get(patientId);
+        int recordTypeId = RecordTypes.find(recordType);
+        if (patient == null || recordTypeId < 0) {
+            return new ArrayList<>();
+        }
+        return patient.getAggregates(recordTypeId, startTime, endTime, resolution);
+    }
+
+    /**
+     * Returns the most recent value of one record type of a patient. The value
+     * is kept up to date on every append, so this is O(1) regardless of how
+     * much history is stored.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g. "ECG"
+     * @return the latest value, or null if there is none
+     */
+    public LatestValue getLatest(int patientId, String recordType) {
+        Patient patient = patientMap.get(patientId);
+        int recordTypeId = RecordTypes.find(recordType);
+        if (patient == null || recordTypeId < 0) {
+            return null;
+        }
+        return patient.getLatest(recordTypeId);
+    }
+
+    /**
+     * Returns the current vitals of every patient in one call, for overviews
+     * such as ward dashboards. The cost depends on the number of patients and
+     * record types only, not on the stored history.
+     *
+     * @return one snapshot per patient
+     */
+    public List<VitalsSnapshot> getLatestVitals() {
+        List<VitalsSnapshot> snapshots = new ArrayList<>(patientMap.size());
+        for (Patient patient : patientMap.values()) {
+            snapshots.add(patient.getLatestVitals());
+        }
+        return snapshots;
+    }
+
     /**
      * Retrieves a collection of all patients stored in the data storage.
      *
@@ -123,7 +686,12 @@ public class DataStorage {
      * @param patient the Patient object containing the patient's data
      */
     public void addPatient(int id, Patient patient) {
-        patientMap.put(id, patient);
+        patient.configureRetention(retentionPolicy, retentionStats);
+        Patient previous = patientMap.put(id, patient);
+        if (previous != null && previous != patient) {
+            retentionStats.addStoredSamples(-previous.sampleCount());
+        }
+        enforceTotalLimit();
     }
 
     /**
@@ -156,7 +724,7 @@ public class DataStorage {
      * Clears all stored patient data.
      */
     public void clearAllData() {
-        patientMap.clear();
+        reset();
     }
 
     /**
@@ -1,15 +1,84 @@
 package com.data_management;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Reads the simulator's {@code .txt} output files and {@code .jsonl} files of
+ * device messages, one JSON object per line. Lines are parsed straight from
+ * the read buffer by a {@link RecordLineParser} or {@link JsonRecordCodec}
+ * into a {@link RecordBatch}, which is merged into the storage in bulk.
+ * <p>
+ * With a parallelism above one, the files are parsed concurrently on a
+ * fork-join pool. Each file is parsed by one worker into its own batch, so
+ * workers share nothing but the storage, and the records of one file reach
+ * the storage in file order just like in the sequential mode.
+ * <p>
+ * Files larger than the chunk size are not read by a single worker: they are
+ * memory-mapped in chunks aligned to line boundaries, the chunks are parsed
+ * in parallel, and the results are merged in file order. This keeps all
+ * workers busy when most of the data sits in a few huge label files. At most
+ * {@code parallelism} chunks of a file are parsed ahead of the merge, so the
+ * parsed batches waiting in memory stay bounded however large the file is.
+ */
 public class FileDataReader implements BatchDataReader {
+    private static final int FLUSH_THRESHOLD = 8192; // records buffered per worker before merging
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+    private static final long DEFAULT_CHUNK_BYTES = 32L << 20;
+    private static final long MAX_CHUNK_BYTES = 1L << 30; // one mapping must stay below 2 GB
+
     private final String directory;
+    private final int parallelism;
+    private final long mappedChunkBytes;
 
     public FileDataReader(String directory) {
+        this(directory, 1);
+    }
+
+    /**
+     * Creates a reader that parses up to {@code parallelism} files at a time.
+     *
+     * @param directory   the directory to read {@code .txt} and {@code .jsonl} files from
+     * @param parallelism the number of worker threads; 1 reads sequentially
+     */
+    public FileDataReader(String directory, int parallelism) {
+        this(directory, parallelism, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * Creates a reader that parses up to {@code parallelism} files or chunks
+     * at a time. Files larger than {@code mappedChunkBytes} are memory-mapped
+     * and split into chunks of about that size.
+     *
+     * @param directory        the directory to read {@code .txt} and {@code .jsonl} files from
+     * @param parallelism      the number of worker threads; 1 reads
+     *                         sequentially without mapping
+     * @param mappedChunkBytes the chunk size for large files, at most 1 GB
+     */
+    public FileDataReader(String directory, int parallelism, long mappedChunkBytes) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (mappedChunkBytes < 1 || mappedChunkBytes > MAX_CHUNK_BYTES) {
+            throw new IllegalArgumentException("Chunk size must be between 1 byte and 1 GB");
+        }
         this.directory = directory;
+        this.parallelism = parallelism;
+        this.mappedChunkBytes = mappedChunkBytes;
     }
 
     @Override
@@ -20,53 +89,169 @@ public class FileDataReader implements BatchDataReader {
             return;
         }
 
+        List<Path> files;
         try (Stream<Path> paths = Files.walk(dirPath)) {
-            paths.filter(Files::isRegularFile)
-                 .filter(p -> p.getFileName().toString().endsWith(".txt"))
-                 .forEach(path -> readFile(path, storage));
+            files = paths.filter(Files::isRegularFile)
+                         .filter(p -> p.getFileName().toString().endsWith(".txt")
+                                 || p.getFileName().toString().endsWith(".jsonl"))
+                         .collect(Collectors.toList());
         }
-    }
 
-    private void readFile(Path path, DataStorage storage) {
-        try (BufferedReader reader = Files.newBufferedReader(path)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-
-                try {
-                    String[] splits = line.split(",\\s*");
-                    if (splits.length != 4) {
-                        System.err.println("Invalid record format: " + line + " in " + path);
-                        continue;
-                    }
-
-                    int patientId = Integer.parseInt(splits[0].split(":", 2)[1].trim());
-                    long timestamp = Long.parseLong(splits[1].split(":", 2)[1].trim());
-                    String label = splits[2].split(":", 2)[1].trim();
-                    String rawValue = splits[3].split(":", 2)[1].trim().replace("%", "");
-
-                    double value;
+        if (parallelism == 1) {
+            for (Path path : files) {
+                readFile(path, storage);
+            }
+            return;
+        }
 
-                    // Handle alert records with non-numeric values gracefully
-                    if (label.equalsIgnoreCase("Alert") || label.equalsIgnoreCase("ManualAlert")) {
-                        try {
-                            value = Double.parseDouble(rawValue); // just in case it's numeric
-                        } catch (NumberFormatException e) {
-                            value = 0.0; // fallback dummy value
-                        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Path path : files) {
+                tasks.add(() -> {
+                    if (Files.size(path) > mappedChunkBytes) {
+                        readFileInChunks(path, storage);
                     } else {
-                        value = Double.parseDouble(rawValue);
+                        readFile(path, storage);
                     }
+                    return null;
+                });
+            }
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + directory, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error reading " + directory, e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-                    storage.addPatientData(patientId, value, label, timestamp);
+    private void readFile(Path path, DataStorage storage) {
+        LineReader lines = new LineReader(path, storage, FLUSH_THRESHOLD);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = lines.read(buffer, limit, eof);
 
-                } catch (Exception e) {
-                    System.err.println("Invalid number format: " + line + " in " + path);
+                // keep the partial last line for the next read
+                buffer.limit(limit).position(lineStart);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
                 }
             }
         } catch (IOException e) {
             System.err.println("Error reading file: " + path);
         }
+        lines.flush();
     }
 
+    /**
+     * Memory-maps a large file in chunks that end on line boundaries and
+     * parses the chunks in parallel on the current fork-join pool. Each chunk
+     * is parsed into its own batch; the batches are merged in file order as
+     * soon as they are ready, so the storage sees the records in the same
+     * order as with a sequential read. A new chunk is only forked once the
+     * oldest of {@code parallelism} outstanding ones is merged. If a chunk or
+     * a merge fails, the outstanding chunks are cancelled and waited for
+     * before the file is closed. A file with a line too long to map is read
+     * sequentially instead.
+     */
+    private void readFileInChunks(Path path, DataStorage storage) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<Long> boundaries = chunkBoundaries(channel);
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                if (boundaries.get(i + 1) - boundaries.get(i) > Integer.MAX_VALUE) {
+                    readFile(path, storage);
+                    return;
+                }
+            }
+            Deque<ForkJoinTask<RecordBatch>> chunks = new ArrayDeque<>();
+            try {
+                for (int i = 0; i + 1 < boundaries.size(); i++) {
+                    long start = boundaries.get(i);
+                    long end = boundaries.get(i + 1);
+                    if (chunks.size() == parallelism) {
+                        storage.addPatientData(chunks.removeFirst().join());
+                    }
+                    chunks.addLast(ForkJoinTask.adapt(() -> {
+                        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        LineReader lines = new LineReader(path, storage, Integer.MAX_VALUE);
+                        lines.read(chunk, chunk.limit(), true);
+                        return lines.getBatch();
+                    }).fork());
+                }
+                while (!chunks.isEmpty()) {
+                    storage.addPatientData(chunks.removeFirst().join());
+                }
+            } finally {
+                // after a failure, settle the chunks still in flight before the channel closes under them
+                for (ForkJoinTask<RecordBatch> chunk : chunks) {
+                    chunk.cancel(true);
+                }
+                for (ForkJoinTask<RecordBatch> chunk : chunks) {
+                    chunk.quietlyJoin();
+                }
+            }
+        }
+    }
 
+    /**
+     * Splits a file into chunks of about {@code mappedChunkBytes}, moving each
+     * boundary forward to just after the next line end: a line feed, a
+     * carriage return, or both together, so files with any of the line
+     * endings {@link LineReader} accepts are split.
+     */
+    private List<Long> chunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = mappedChunkBytes;
+        while (position < size) {
+            long boundary = size;
+            long scan = position - 1;
+            search:
+            while (scan < size) {
+                probe.clear();
+                int read = channel.read(probe, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = probe.get(i);
+                    if (b == '\n' || b == '\r') {
+                        boundary = scan + i + 1;
+                        if (b == '\r' && boundary < size && byteAt(channel, boundary) == '\n') {
+                            boundary++; // keep "\r\n" in one chunk
+                        }
+                        break search;
+                    }
+                }
+                scan += read;
+            }
+            if (boundary >= size) {
+                break;
+            }
+            boundaries.add(boundary);
+            position = boundary + mappedChunkBytes;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    private static byte byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return channel.read(one, position) == 1 ? one.get(0) : 0;
+    }
 }
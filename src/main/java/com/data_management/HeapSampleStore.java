@@ -0,0 +1,38 @@
+package com.data_management;
+
+/**
+ * Keeps samples on the Java heap in two parallel primitive arrays, so a
+ * sample costs 16 bytes and no object.
+ */
+class HeapSampleStore extends RingSampleStore {
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    @Override
+    long timestampInSlot(int slot) {
+        return timestamps[slot];
+    }
+
+    @Override
+    double valueInSlot(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    void writeSlot(int slot, long timestamp, double value) {
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+    }
+
+    @Override
+    void reallocate(int newCapacity) {
+        long[] newTimestamps = new long[newCapacity];
+        double[] newValues = new double[newCapacity];
+        for (int i = 0; i < size(); i++) {
+            newTimestamps[i] = timestampAt(i);
+            newValues[i] = valueAt(i);
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+    }
+}
@@ -0,0 +1,435 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decouples a producer of records, such as a socket callback, from the
+ * storage. Records are put into a bounded queue and a dedicated writer thread
+ * applies them to {@link DataStorage} in batches, so a slow storage never
+ * stalls the producer beyond what the {@link OverflowPolicy} allows.
+ * <p>
+ * The queue is a ring of primitive columns, so queuing a record allocates
+ * nothing. Spilled records are written to disk outside the queue lock, so a
+ * slow disk delays only the producer that spills. A batch the storage fails
+ * on is counted as failed and the writer moves on to the next one. Counters
+ * for queue depth, applied, dropped, spilled and failed records can be read
+ * at any time.
+ */
+public class IngestionPipeline implements AutoCloseable {
+    private static final int MAX_BATCH = 1024;
+
+    private final DataStorage storage;
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final int[] patientIds;
+    private final int[] recordTypeIds;
+    private final long[] timestamps;
+    private final double[] values;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final Thread writer;
+
+    private int head;
+    private int size;
+    private boolean applying; // the writer holds records that are not yet in the storage
+    private boolean closed;
+    private long spillPending; // spilled records not yet applied, including those still being written
+
+    private final Object spillLock = new Object();
+    private Path spillFile; // guarded by spillLock
+    private DataOutputStream spill;
+    private long spillWritten;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Creates a pipeline and starts its writer thread.
+     *
+     * @param storage  the storage to apply records to
+     * @param capacity the maximum number of queued records
+     * @param policy   what to do when the queue is full
+     */
+    public IngestionPipeline(DataStorage storage, int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.storage = storage;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.patientIds = new int[capacity];
+        this.recordTypeIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.writer = new Thread(this::run, "ingestion-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues one record.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the measured value
+     * @param recordTypeId     the record type id from {@link RecordTypes}
+     * @param timestamp        the time of the measurement in milliseconds since
+     *                         epoch
+     */
+    public void offer(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        boolean queued;
+        lock.lock();
+        try {
+            queued = enqueue(patientId, measurementValue, recordTypeId, timestamp);
+        } finally {
+            lock.unlock();
+        }
+        if (!queued) {
+            synchronized (spillLock) {
+                writeSpill(patientId, measurementValue, recordTypeId, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Queues every record of a batch under one lock acquisition.
+     *
+     * @param batch the records to queue
+     */
+    public void offer(RecordBatch batch) {
+        int queued = 0;
+        lock.lock();
+        try {
+            while (queued < batch.size() && enqueue(batch.getPatientId(queued), batch.getMeasurementValue(queued),
+                    batch.getRecordTypeId(queued), batch.getTimestamp(queued))) {
+                queued++;
+            }
+            if (queued < batch.size()) {
+                // once spilling, the rest of the batch spills too
+                long rest = batch.size() - queued - 1;
+                received.add(rest);
+                spillPending += rest;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (queued < batch.size()) {
+            synchronized (spillLock) {
+                for (int i = queued; i < batch.size(); i++) {
+                    writeSpill(batch.getPatientId(i), batch.getMeasurementValue(i), batch.getRecordTypeId(i),
+                            batch.getTimestamp(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until every record queued so far has been applied to the storage.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        lock.lock();
+        try {
+            while ((size > 0 || applying || spillPending > 0) && writer.isAlive()) {
+                idle.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the queued records and stops the writer thread. If the calling
+     * thread is interrupted, it stops waiting and keeps its interrupt status;
+     * the writer still applies the remaining records in the background.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (!interrupted) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    public long getAppliedCount() {
+        return applied.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getSpilledCount() {
+        return spilled.sum();
+    }
+
+    /**
+     * Returns the number of records in batches the storage failed on, for
+     * example because a sample listener threw.
+     *
+     * @return the number of records that were not applied
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Adds a record to the ring, applying the overflow policy. Caller holds
+     * the lock.
+     *
+     * @return whether the record was handled; {@code false} if it was counted
+     *         as pending spill and the caller must write it to the spill file
+     *         after releasing the lock
+     */
+    private boolean enqueue(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        if (closed) {
+            throw new IllegalStateException("Ingestion pipeline is closed");
+        }
+        received.increment();
+        if (policy == OverflowPolicy.SPILL && (size == capacity || spillPending > 0)) {
+            // once spilling, keep spilling until the writer has caught up, so order is kept
+            spillPending++;
+            return false;
+        }
+        if (size == capacity) {
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                head = (head + 1) % capacity;
+                size--;
+                dropped.increment();
+            } else {
+                while (size == capacity && !closed) {
+                    notFull.awaitUninterruptibly();
+                }
+            }
+        }
+        int slot = (head + size) % capacity;
+        patientIds[slot] = patientId;
+        recordTypeIds[slot] = recordTypeId;
+        timestamps[slot] = timestamp;
+        values[slot] = measurementValue;
+        size++;
+        notEmpty.signal();
+        return true;
+    }
+
+    /**
+     * Appends a record to the spill file. Caller holds {@code spillLock} but
+     * not the queue lock.
+     */
+    private void writeSpill(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        try {
+            if (spill == null) {
+                spillFile = Files.createTempFile("ingestion-spill", ".bin");
+                spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+            }
+            spill.writeInt(patientId);
+            spill.writeInt(recordTypeId);
+            spill.writeLong(timestamp);
+            spill.writeDouble(measurementValue);
+            spillWritten++;
+            spilled.increment();
+        } catch (IOException e) {
+            dropped.increment();
+            System.err.println("Error spilling record, dropped: " + e.getMessage());
+            lock.lock();
+            try {
+                spillPending--;
+                notEmpty.signal(); // the writer may be waiting only for this record
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void run() {
+        RecordBatch batch = new RecordBatch(MAX_BATCH);
+        while (true) {
+            boolean replay = false;
+            lock.lock();
+            try {
+                while (size == 0 && spillPending == 0 && !closed) {
+                    idle.signalAll();
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (size == 0 && spillPending == 0) {
+                    idle.signalAll();
+                    return; // closed and drained
+                }
+                if (size > 0) {
+                    int count = Math.min(size, MAX_BATCH);
+                    for (int i = 0; i < count; i++) {
+                        int slot = (head + i) % capacity;
+                        batch.add(patientIds[slot], values[slot], recordTypeIds[slot], timestamps[slot]);
+                    }
+                    head = (head + count) % capacity;
+                    size -= count;
+                    notFull.signalAll();
+                } else {
+                    replay = true; // the queue is drained, take over the spilled records
+                }
+                applying = true;
+            } finally {
+                lock.unlock();
+            }
+
+            long replayed = 0;
+            if (replay) {
+                Path file;
+                synchronized (spillLock) {
+                    file = spillFile;
+                    replayed = spillWritten;
+                    closeSpill();
+                }
+                if (file != null) {
+                    replaySpill(file, replayed, batch);
+                } else {
+                    Thread.yield(); // a producer has counted a record but not written it yet
+                }
+            } else {
+                apply(batch);
+            }
+
+            lock.lock();
+            try {
+                applying = false;
+                spillPending -= replayed;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies a batch to the storage and clears it. A record that fails is
+     * counted and reported, and the rest of the batch is still applied,
+     * instead of stopping the writer, which would leave blocked producers
+     * and {@link #flush} waiting forever.
+     */
+    private void apply(RecordBatch batch) {
+        int from = 0;
+        int failures = 0;
+        RuntimeException first = null;
+        try {
+            while (from < batch.size()) {
+                try {
+                    storage.addPatientData(batch, from);
+                    applied.add(batch.size() - from);
+                    from = batch.size();
+                } catch (DataStorage.BatchFailure e) {
+                    applied.add(e.getIndex() - from);
+                    failed.increment();
+                    failures++;
+                    if (first == null) {
+                        first = e.getCause();
+                    }
+                    from = e.getIndex() + 1;
+                }
+            }
+            if (failures > 0) {
+                System.err.println("Error applying " + failures + " of " + batch.size()
+                        + " records, skipped: " + first);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Closes the spill file so new overflow goes to a fresh one. Caller holds
+     * {@code spillLock}; {@code spillPending} stays set until the replay is
+     * done, so producers keep spilling meanwhile and order is preserved.
+     */
+    private void closeSpill() {
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing spill file: " + e.getMessage());
+        }
+        spill = null;
+        spillFile = null;
+        spillWritten = 0;
+    }
+
+    private void replaySpill(Path file, long count, RecordBatch batch) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (long i = 0; i < count; i++) {
+                int patientId = in.readInt();
+                int recordTypeId = in.readInt();
+                long timestamp = in.readLong();
+                batch.add(patientId, in.readDouble(), recordTypeId, timestamp);
+                if (batch.size() == MAX_BATCH) {
+                    apply(batch);
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("Spill file ended early: " + file);
+        } catch (IOException e) {
+            System.err.println("Error replaying spill file: " + e.getMessage());
+        } finally {
+            apply(batch);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Error deleting spill file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Decodes JSON messages from devices into records. A message is a flat
+ * object with a patient id, a timestamp and either one {@code label}/
+ * {@code data} pair or any number of vitals keyed by their label:
+ * <pre>
+ *   {"patientId": 1, "timestamp": 1743760000000, "label": "ECG", "data": 0.5}
+ *   {"patientId": 1, "timestamp": 1743760000000, "HeartRate": 72, "Saturation": "97%"}
+ * </pre>
+ * Values may be numbers or strings; like the text format, {@code %} signs
+ * are ignored and alerts with non-numeric data get the value 0.0.
+ * <p>
+ * Flat objects are scanned directly from the bytes with no intermediate
+ * strings or DOM: numbers are parsed in place and labels are resolved
+ * through a {@link LabelCache}. Anything outside that schema, such as escape
+ * sequences, nested objects (their entries are read as vitals too) or an
+ * array of messages, is handed to org.json instead.
+ * <p>
+ * A codec holds per-message state and is meant to be owned by one thread.
+ */
+public final class JsonRecordCodec implements RecordDecoder {
+    private static final byte[] PATIENT_ID = ascii("patientId");
+    private static final byte[] TIMESTAMP = ascii("timestamp");
+    private static final byte[] LABEL = ascii("label");
+    private static final byte[] DATA = ascii("data");
+
+    private final LabelCache labels = new LabelCache();
+
+    // value ranges of the current message, decoded into records once it is known to be valid
+    private int[] labelStart = new int[8];
+    private int[] labelEnd = new int[8];
+    private int[] valueStart = new int[8];
+    private int[] valueEnd = new int[8];
+    private int[] typeIds = new int[8];
+    private double[] values = new double[8];
+    private int vitals;
+
+    /**
+     * Decodes a message, for sources such as WebSockets that deliver strings.
+     *
+     * @param message the JSON message
+     * @param batch   receives the records
+     * @return false if the message is invalid
+     */
+    public boolean decode(String message, RecordBatch batch) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return decode(ByteBuffer.wrap(bytes), 0, bytes.length, batch);
+    }
+
+    @Override
+    public boolean decode(ByteBuffer buffer, int start, int end, RecordBatch batch) {
+        int first = skipWhitespace(buffer, start, end);
+        if (first == end) {
+            return true; // blank line
+        }
+        try {
+            int result = decodeFlat(buffer, first, end, batch);
+            if (result >= 0) {
+                return result > 0;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return decodeWithDom(RecordLineParser.text(buffer, first, end, false), batch);
+    }
+
+    /**
+     * Scans a flat object. Returns 1 if it was decoded, 0 if it is invalid
+     * and -1 if it needs the full JSON parser.
+     */
+    private int decodeFlat(ByteBuffer buffer, int start, int end, RecordBatch batch) {
+        if (buffer.get(start) != '{') {
+            return -1;
+        }
+        int patientStart = -1;
+        int patientEnd = -1;
+        int timestampStart = -1;
+        int timestampEnd = -1;
+        int singleLabelStart = -1;
+        int singleLabelEnd = -1;
+        int dataStart = -1;
+        int dataEnd = -1;
+        vitals = 0;
+
+        int i = skipWhitespace(buffer, start + 1, end);
+        if (i < end && buffer.get(i) == '}') {
+            return 0;
+        }
+        while (true) {
+            if (i >= end || buffer.get(i) != '"') {
+                return -1;
+            }
+            int keyStart = i + 1;
+            int keyEnd = endOfString(buffer, keyStart, end);
+            if (keyEnd < 0) {
+                return -1;
+            }
+            i = skipWhitespace(buffer, keyEnd + 1, end);
+            if (i >= end || buffer.get(i) != ':') {
+                return -1;
+            }
+            i = skipWhitespace(buffer, i + 1, end);
+            if (i >= end) {
+                return -1;
+            }
+
+            int from;
+            int to;
+            byte b = buffer.get(i);
+            if (b == '"') {
+                from = i + 1;
+                to = endOfString(buffer, from, end);
+                if (to < 0) {
+                    return -1;
+                }
+                i = to + 1;
+            } else if (b == '{' || b == '[') {
+                return -1;
+            } else {
+                from = i;
+                while (i < end && buffer.get(i) != ',' && buffer.get(i) != '}' && (buffer.get(i) & 0xFF) > ' ') {
+                    i++;
+                }
+                to = i;
+                if (isNull(buffer, from, to)) {
+                    return -1;
+                }
+            }
+
+            if (equals(buffer, keyStart, keyEnd, PATIENT_ID)) {
+                patientStart = from;
+                patientEnd = to;
+            } else if (equals(buffer, keyStart, keyEnd, TIMESTAMP)) {
+                timestampStart = from;
+                timestampEnd = to;
+            } else if (equals(buffer, keyStart, keyEnd, LABEL)) {
+                singleLabelStart = from;
+                singleLabelEnd = to;
+            } else if (equals(buffer, keyStart, keyEnd, DATA)) {
+                dataStart = from;
+                dataEnd = to;
+            } else {
+                addVital(keyStart, keyEnd, from, to);
+            }
+
+            i = skipWhitespace(buffer, i, end);
+            if (i >= end) {
+                return -1;
+            }
+            if (buffer.get(i) == '}') {
+                break;
+            }
+            if (buffer.get(i) != ',') {
+                return -1;
+            }
+            i = skipWhitespace(buffer, i + 1, end);
+        }
+        if (skipWhitespace(buffer, i + 1, end) != end) {
+            return -1; // more than one value, e.g. several objects on one line
+        }
+
+        if (patientStart < 0 || timestampStart < 0 || (singleLabelStart < 0) != (dataStart < 0)) {
+            return 0;
+        }
+        if (singleLabelStart >= 0) {
+            addVital(singleLabelStart, singleLabelEnd, dataStart, dataEnd);
+        }
+        if (vitals == 0) {
+            return 0;
+        }
+
+        int patientId = RecordLineParser.parseInt(buffer, patientStart, patientEnd);
+        long timestamp = RecordLineParser.parseLong(buffer, timestampStart, timestampEnd);
+        for (int v = 0; v < vitals; v++) {
+            typeIds[v] = labels.resolve(buffer, labelStart[v], labelEnd[v]);
+            if (typeIds[v] < 0) {
+                return 0;
+            }
+            try {
+                values[v] = RecordLineParser.parseDouble(buffer, valueStart[v], valueEnd[v]);
+            } catch (NumberFormatException e) {
+                if (!labels.isAlert(typeIds[v])) {
+                    return 0;
+                }
+                values[v] = 0.0; // alerts may carry text such as "resolved"
+            }
+        }
+        for (int v = 0; v < vitals; v++) {
+            batch.add(patientId, values[v], typeIds[v], timestamp);
+        }
+        return 1;
+    }
+
+    /**
+     * Decodes anything valid JSON: an object, possibly with nested objects of
+     * vitals, or an array of objects.
+     */
+    private static boolean decodeWithDom(String message, RecordBatch batch) {
+        try {
+            Object parsed = new JSONTokener(message).nextValue();
+            RecordBatch records = new RecordBatch();
+            if (parsed instanceof JSONArray) {
+                JSONArray array = (JSONArray) parsed;
+                for (int i = 0; i < array.length(); i++) {
+                    if (!decodeObject(array.getJSONObject(i), records)) {
+                        return false;
+                    }
+                }
+            } else if (!(parsed instanceof JSONObject) || !decodeObject((JSONObject) parsed, records)) {
+                return false;
+            }
+            for (int i = 0; i < records.size(); i++) {
+                batch.add(records.getPatientId(i), records.getMeasurementValue(i), records.getRecordTypeId(i),
+                        records.getTimestamp(i));
+            }
+            return true;
+        } catch (JSONException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean decodeObject(JSONObject object, RecordBatch records) {
+        int patientId = object.getInt("patientId");
+        long timestamp = object.getLong("timestamp");
+        int before = records.size();
+        if (object.has("label") || object.has("data")) {
+            if (!addDomValue(patientId, timestamp, object.getString("label"), object.get("data"), records)) {
+                return false;
+            }
+        }
+        for (String key : object.keySet()) {
+            if (key.equals("patientId") || key.equals("timestamp") || key.equals("label") || key.equals("data")) {
+                continue;
+            }
+            Object value = object.get(key);
+            if (value instanceof JSONObject) {
+                JSONObject nested = (JSONObject) value;
+                for (String label : nested.keySet()) {
+                    if (!addDomValue(patientId, timestamp, label, nested.get(label), records)) {
+                        return false;
+                    }
+                }
+            } else if (!addDomValue(patientId, timestamp, key, value, records)) {
+                return false;
+            }
+        }
+        return records.size() > before;
+    }
+
+    private static boolean addDomValue(int patientId, long timestamp, String label, Object value,
+                                       RecordBatch records) {
+        double measurement;
+        if (value instanceof Number) {
+            measurement = ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            try {
+                measurement = Double.parseDouble(((String) value).trim().replace("%", ""));
+            } catch (NumberFormatException e) {
+                if (!label.equalsIgnoreCase("Alert") && !label.equalsIgnoreCase("ManualAlert")) {
+                    return false;
+                }
+                measurement = 0.0;
+            }
+        } else {
+            return false;
+        }
+        int recordTypeId = RecordTypes.tryIdOf(label);
+        if (recordTypeId < 0) {
+            return false;
+        }
+        records.add(patientId, measurement, recordTypeId, timestamp);
+        return true;
+    }
+
+    private void addVital(int keyStart, int keyEnd, int from, int to) {
+        if (vitals == labelStart.length) {
+            labelStart = Arrays.copyOf(labelStart, vitals * 2);
+            labelEnd = Arrays.copyOf(labelEnd, vitals * 2);
+            valueStart = Arrays.copyOf(valueStart, vitals * 2);
+            valueEnd = Arrays.copyOf(valueEnd, vitals * 2);
+            typeIds = Arrays.copyOf(typeIds, vitals * 2);
+            values = Arrays.copyOf(values, vitals * 2);
+        }
+        labelStart[vitals] = keyStart;
+        labelEnd[vitals] = keyEnd;
+        valueStart[vitals] = from;
+        valueEnd[vitals] = to;
+        vitals++;
+    }
+
+    /**
+     * Returns the index of the closing quote of a string starting at
+     * {@code from}, or -1 if the string has escapes or does not end.
+     */
+    private static int endOfString(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                return i;
+            }
+            if (b == '\\') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from, int end) {
+        while (from < end && (buffer.get(from) & 0xFF) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isNull(ByteBuffer buffer, int from, int to) {
+        return to - from == 4 && buffer.get(from) == 'n' && buffer.get(from + 1) == 'u'
+                && buffer.get(from + 2) == 'l' && buffer.get(from + 3) == 'l';
+    }
+
+    private static boolean equals(ByteBuffer buffer, int from, int to, byte[] key) {
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(from + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,97 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Resolves record type labels given as bytes to their {@link RecordTypes} id
+ * without decoding them to a string, using open addressing on the label
+ * bytes. Only the first occurrence of a label allocates. Owned by one thread,
+ * like the parsers that use it.
+ */
+final class LabelCache {
+    private byte[][] labels = new byte[16][];
+    private int[] ids = new int[16];
+    private int size;
+    private boolean[] alertById = new boolean[8];
+
+    /**
+     * Returns the id of the label in {@code [from, to)} of the buffer,
+     * registering it with {@link RecordTypes} on first sight, or -1 if the
+     * registry is full and rejected it.
+     */
+    int resolve(ByteBuffer buffer, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = labels.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (labels[slot] != null) {
+            if (matches(labels[slot], buffer, from, to)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String label = RecordLineParser.text(buffer, from, to, false);
+        int id = RecordTypes.tryIdOf(label);
+        if (id < 0) {
+            return -1; // not cached, so a flood of new labels cannot grow the cache either
+        }
+        if (id >= alertById.length) {
+            alertById = Arrays.copyOf(alertById, Math.max(alertById.length * 2, id + 1));
+        }
+        alertById[id] = label.equalsIgnoreCase("Alert") || label.equalsIgnoreCase("ManualAlert");
+        byte[] key = new byte[to - from];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = buffer.get(from + i);
+        }
+        labels[slot] = key;
+        ids[slot] = id;
+        if (++size * 2 > labels.length) {
+            grow();
+        }
+        return id;
+    }
+
+    /**
+     * Returns whether a label resolved by this cache is an alert label, whose
+     * records may carry text instead of a number.
+     */
+    boolean isAlert(int id) {
+        return id < alertById.length && alertById[id];
+    }
+
+    private static boolean matches(byte[] label, ByteBuffer buffer, int from, int to) {
+        if (label.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < label.length; i++) {
+            if (label[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        byte[][] oldLabels = labels;
+        int[] oldIds = ids;
+        labels = new byte[oldLabels.length * 2][];
+        ids = new int[oldLabels.length * 2];
+        int mask = labels.length - 1;
+        for (int i = 0; i < oldLabels.length; i++) {
+            if (oldLabels[i] == null) {
+                continue;
+            }
+            int hash = Arrays.hashCode(oldLabels[i]);
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (labels[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            labels[slot] = oldLabels[i];
+            ids[slot] = oldIds[i];
+        }
+    }
+}
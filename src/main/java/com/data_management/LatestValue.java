@@ -0,0 +1,36 @@
+package com.data_management;
+
+/**
+ * The most recent sample of one record type of one patient, as kept in the
+ * latest-value table of {@link DataStorage}.
+ */
+public class LatestValue {
+    private final String recordType;
+    private final long timestamp;
+    private final double value;
+
+    /**
+     * Constructs a latest-value entry.
+     *
+     * @param recordType the type of record, e.g. "ECG"
+     * @param timestamp  the time of the sample in milliseconds since epoch
+     * @param value      the measured value
+     */
+    public LatestValue(String recordType, long timestamp, double value) {
+        this.recordType = recordType;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public String getRecordType() {
+        return recordType;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return value;
+    }
+}
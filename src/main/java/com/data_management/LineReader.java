@@ -0,0 +1,107 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Splits buffered bytes into lines and decodes them into a batch, which is
+ * merged into the storage whenever it reaches the flush threshold.
+ * Handles "\r", "\n" and "\r\n" line endings like BufferedReader.
+ */
+final class LineReader {
+    private final String source;
+    private final DataStorage storage;
+    private final int flushThreshold;
+    private final RecordDecoder decoder;
+    private final RecordBatch batch = new RecordBatch();
+    private boolean afterCarriageReturn;
+
+    LineReader(Path path, DataStorage storage, int flushThreshold) {
+        this(path.toString(), storage, flushThreshold, decoderFor(path));
+    }
+
+    /**
+     * Creates a reader for input that is not a file, such as a socket.
+     *
+     * @param source names the input in error messages
+     */
+    LineReader(String source, DataStorage storage, int flushThreshold, RecordDecoder decoder) {
+        this.source = source;
+        this.storage = storage;
+        this.flushThreshold = flushThreshold;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Returns the decoder for a file: JSON for {@code .jsonl} files, the
+     * simulator's text format otherwise.
+     */
+    static RecordDecoder decoderFor(Path path) {
+        if (path.getFileName().toString().endsWith(".jsonl")) {
+            return new JsonRecordCodec();
+        }
+        return new RecordLineParser();
+    }
+
+    /**
+     * Parses the complete lines in {@code [0, limit)} of the buffer and
+     * returns where the unfinished last line starts. At the end of the
+     * input the last line is parsed even without a terminator.
+     */
+    int read(ByteBuffer buffer, int limit, boolean eof) {
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                if (b == '\r' || !afterCarriageReturn) { // "\r\n" ends one line, not two
+                    readLine(buffer, lineStart, i);
+                }
+                afterCarriageReturn = b == '\r';
+                lineStart = i + 1;
+            } else {
+                afterCarriageReturn = false;
+            }
+        }
+        if (eof && lineStart < limit) {
+            readLine(buffer, lineStart, limit);
+            lineStart = limit;
+        }
+        return lineStart;
+    }
+
+    private void readLine(ByteBuffer buffer, int start, int end) {
+        if (!decoder.decode(buffer, start, end, batch)) {
+            byte[] line = new byte[end - start];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = buffer.get(start + i);
+            }
+            System.err.println("Invalid record: " + new String(line, StandardCharsets.UTF_8) + " in " + source);
+            return;
+        }
+        if (batch.size() >= flushThreshold) {
+            flush();
+        }
+    }
+
+    void flush() {
+        storage.addPatientData(batch);
+        batch.clear();
+    }
+
+    RecordBatch getBatch() {
+        return batch;
+    }
+
+    DataStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Forgets that the previous input ended with a carriage return, for
+     * when reading restarts at the beginning of a file.
+     */
+    void resetLineState() {
+        afterCarriageReturn = false;
+    }
+}
@@ -0,0 +1,54 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps samples outside the Java heap in a direct {@link ByteBuffer} of
+ * fixed-width 16 byte entries (timestamp followed by value). The heap only
+ * holds the small buffer object, so tens of millions of samples do not add
+ * to garbage collection work.
+ * <p>
+ * Direct memory is returned when the buffer object is collected; size the
+ * JVM with {@code -XX:MaxDirectMemorySize} accordingly.
+ */
+class OffHeapSampleStore extends RingSampleStore {
+    private static final int ENTRY_BYTES = 16;
+
+    private ByteBuffer buffer = allocate(INITIAL_CAPACITY);
+
+    @Override
+    long timestampInSlot(int slot) {
+        return buffer.getLong(slot * ENTRY_BYTES);
+    }
+
+    @Override
+    double valueInSlot(int slot) {
+        return buffer.getDouble(slot * ENTRY_BYTES + 8);
+    }
+
+    @Override
+    void writeSlot(int slot, long timestamp, double value) {
+        int offset = slot * ENTRY_BYTES;
+        buffer.putLong(offset, timestamp);
+        buffer.putDouble(offset + 8, value);
+    }
+
+    @Override
+    void reallocate(int newCapacity) {
+        if (newCapacity > Integer.MAX_VALUE / ENTRY_BYTES) {
+            throw new IllegalStateException("Off-heap series cannot hold more than "
+                    + (Integer.MAX_VALUE / ENTRY_BYTES) + " samples");
+        }
+        ByteBuffer grown = allocate(newCapacity);
+        for (int i = 0; i < size(); i++) {
+            grown.putLong(i * ENTRY_BYTES, timestampAt(i));
+            grown.putDouble(i * ENTRY_BYTES + 8, valueAt(i));
+        }
+        buffer = grown;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,18 @@
+package com.data_management;
+
+/**
+ * What an {@link IngestionPipeline} does with a record that arrives while its
+ * queue is full.
+ */
+public enum OverflowPolicy {
+    /** The producer waits until the writer has made room (backpressure). */
+    BLOCK,
+    /** The oldest queued record is discarded to make room for the new one. */
+    DROP_OLDEST,
+    /**
+     * Records are appended to a temporary file and applied once the writer
+     * has caught up, so nothing is lost and the producer never waits on the
+     * storage.
+     */
+    SPILL
+}
@@ -1,27 +1,47 @@
 package com.data_management;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a patient and manages their medical records.
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ * <p>
+ * Records are stored column-wise: one time-ordered {@link TimeSeries} per
+ * record type, indexed by the type's {@link RecordTypes} id.
+ * {@link PatientRecord} objects are only created when records are requested.
+ * <p>
+ * A patient is safe for concurrent use: appends lock only the series of the
+ * record type being written, and readers lock each series they read.
+ * <p>
+ * Every append enforces the patient's {@link RetentionPolicy}. Patients
+ * created on their own keep all samples; patients managed by
+ * {@link DataStorage} share the storage's policy and counters.
  */
 public class Patient {
+    private static final int READ_BLOCK = CompressedSampleStore.CHUNK_SAMPLES; // samples merged per read
+
     private int patientId;
-    private List<PatientRecord> patientRecords;
+    private volatile TimeSeries[] seriesByType; // indexed by record type id, null if no records yet
+    private volatile StorageBackend storageBackend = StorageBackend.HEAP;
+    private volatile RetentionPolicy retentionPolicy = RetentionPolicy.unbounded();
+    private volatile RetentionStats retentionStats = new RetentionStats();
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of record series.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.seriesByType = new TimeSeries[RecordTypes.count()];
     }
 
     /**
@@ -36,14 +56,150 @@ public class Patient {
      *                         milliseconds since UNIX epoch
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+        addRecord(measurementValue, RecordTypes.idOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new record for an already resolved record type.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param recordTypeId     the record type id from {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since UNIX epoch
+     */
+    public void addRecord(double measurementValue, int recordTypeId, long timestamp) {
+        append(measurementValue, recordTypeId, timestamp);
+    }
+
+    /**
+     * Adds a record and returns by how much the number of stored samples
+     * changed, which is less than one when the retention policy evicted
+     * samples.
+     */
+    int append(double measurementValue, int recordTypeId, long timestamp) {
+        return append(measurementValue, recordTypeId, timestamp, null);
+    }
+
+    /**
+     * Adds a record and logs it to the given write-ahead log while its series
+     * is locked, see {@link TimeSeries#add(long, double, RetentionPolicy, RetentionStats, WriteAheadLog, int)}.
+     */
+    int append(double measurementValue, int recordTypeId, long timestamp, WriteAheadLog wal) {
+        TimeSeries series = getSeries(recordTypeId);
+        if (series == null) {
+            series = createSeries(recordTypeId);
+        }
+        RetentionStats stats = retentionStats;
+        int delta = series.add(timestamp, measurementValue, retentionPolicy, stats, wal, patientId);
+        stats.addStoredSamples(delta);
+        return delta;
+    }
+
+    /**
+     * Adds a record replayed from the write-ahead log unless its series
+     * already covers the record's log position.
+     */
+    int replay(double measurementValue, int recordTypeId, long timestamp, long position) {
+        TimeSeries series = getSeries(recordTypeId);
+        if (series == null) {
+            series = createSeries(recordTypeId);
+        }
+        RetentionStats stats = retentionStats;
+        int delta = series.replay(position, timestamp, measurementValue, retentionPolicy, stats);
+        stats.addStoredSamples(delta);
+        return delta;
+    }
+
+    /**
+     * Sets the log position a series was restored to from a snapshot,
+     * creating the series if the snapshot held no samples for it.
+     */
+    void setLogPosition(int recordTypeId, long position) {
+        TimeSeries series = getSeries(recordTypeId);
+        if (series == null) {
+            series = createSeries(recordTypeId);
+        }
+        series.setLogPosition(position);
+    }
+
+    /**
+     * Sets the backend used for record types this patient has no series for
+     * yet. Existing series keep their backend.
+     */
+    void setStorageBackend(StorageBackend backend) {
+        storageBackend = backend;
+    }
+
+    /**
+     * Switches this patient to the given retention policy and counters and
+     * trims the existing series to the new limits. The samples already stored
+     * move from the previous counters to the new ones.
+     */
+    synchronized void configureRetention(RetentionPolicy policy, RetentionStats stats) {
+        long stored = sampleCount();
+        retentionStats.addStoredSamples(-stored);
+        stats.addStoredSamples(stored);
+        retentionStats = stats;
+        retentionPolicy = policy;
+        for (TimeSeries series : nonEmptySeries()) {
+            stats.addStoredSamples(-series.trim(policy, stats));
+        }
+    }
+
+    /**
+     * Returns the number of samples currently stored for this patient.
+     */
+    long sampleCount() {
+        long count = 0;
+        for (TimeSeries series : nonEmptySeries()) {
+            count += series.sampleCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many samples were ever stored for this patient, including
+     * ones evicted since. The count only grows, so comparing two readings
+     * tells how many samples arrived in between, in or out of order.
+     *
+     * @return the number of samples stored since the patient was created
+     */
+    public long getInsertedCount() {
+        long count = 0;
+        for (TimeSeries series : seriesByType) {
+            if (series != null) {
+                count += series.insertedCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the series of the given record type, or null if this patient has
+     * no records of that type.
+     */
+    TimeSeries getSeries(int recordTypeId) {
+        TimeSeries[] series = seriesByType;
+        return recordTypeId < series.length ? series[recordTypeId] : null;
+    }
+
+    private synchronized TimeSeries createSeries(int recordTypeId) {
+        TimeSeries[] series = seriesByType;
+        if (recordTypeId < series.length && series[recordTypeId] != null) {
+            return series[recordTypeId];
+        }
+        TimeSeries[] updated = Arrays.copyOf(series, Math.max(series.length, recordTypeId + 1));
+        TimeSeries created = new TimeSeries(recordTypeId, storageBackend.newStore());
+        updated[recordTypeId] = created;
+        seriesByType = updated;
+        return created;
     }
 
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
-     * The method filters records based on the start and end times provided.
+     * The method binary-searches each record type for the requested window and
+     * merges the matches in timestamp order.
      *
      * @param startTime the start of the time range, in milliseconds since UNIX
      *                  epoch
@@ -53,15 +209,206 @@ public class Patient {
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
         List<PatientRecord> filtered = new ArrayList<>();
-        for (PatientRecord record : patientRecords) {
-            long timestamp = record.getTimestamp();
-            if (timestamp >= startTime && timestamp <= endTime) {
-                filtered.add(record);
+        forEachRecord(startTime, endTime, (recordTypeId, timestamp, value) ->
+                filtered.add(new PatientRecord(patientId, value, recordTypeId, timestamp)));
+        return filtered;
+    }
+
+    /**
+     * Visits every record of this patient within a time range, across all record
+     * types and in timestamp order, without allocating a record object per match.
+     * Records with equal timestamps are visited in record type id order.
+     *
+     * @param startTime the start of the time range, in milliseconds since UNIX
+     *                  epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @param visitor   receives the records
+     */
+    public void forEachRecord(long startTime, long endTime, RecordVisitor visitor) {
+        visitRecords(startTime, endTime, visitor);
+    }
+
+    /**
+     * Adds the records of this patient within a time range to a list, like
+     * {@link #getRecords(long, long)}, and tells how many samples had been
+     * stored for the patient when they were read. Both are taken under the
+     * same locks, so every sample counted is either among the records, outside
+     * the range or already evicted.
+     *
+     * @param startTime the start of the time range, in milliseconds since UNIX
+     *                  epoch
+     * @param endTime   the end of the time range, in milliseconds since UNIX epoch
+     * @param records   receives the records, in timestamp order
+     * @return the {@linkplain #getInsertedCount() inserted count} at the time
+     *         of the read
+     */
+    public long collectRecords(long startTime, long endTime, List<PatientRecord> records) {
+        return visitRecords(startTime, endTime, (recordTypeId, timestamp, value) ->
+                records.add(new PatientRecord(patientId, value, recordTypeId, timestamp)));
+    }
+
+    /**
+     * Visits the records in range and returns the inserted count of the
+     * series it read, under their read locks.
+     */
+    private long visitRecords(long startTime, long endTime, RecordVisitor visitor) {
+        TimeSeries[] series = nonEmptySeries();
+        int locked = 0;
+        long inserted = 0;
+        try {
+            int[] positions = new int[series.length]; // next store index to read
+            int[] ends = new int[series.length];
+            for (; locked < series.length; locked++) {
+                series[locked].lockRead();
+                inserted += series[locked].insertedCount();
+                positions[locked] = startTime > endTime ? 0 : series[locked].lowerBound(startTime);
+                ends[locked] = startTime > endTime ? 0 : series[locked].upperBound(endTime);
+            }
+
+            // k-way merge of the per-type windows, read in blocks so compressed
+            // chunks are decoded once; there are only a handful of types
+            long[][] timestamps = new long[series.length][];
+            double[][] values = new double[series.length][];
+            int[] cursors = new int[series.length];
+            int[] filled = new int[series.length];
+            for (int i = 0; i < series.length; i++) {
+                int block = Math.min(READ_BLOCK, Math.max(0, ends[i] - positions[i]));
+                timestamps[i] = new long[block];
+                values[i] = new double[block];
+                refill(series[i], i, positions, ends, timestamps, values, cursors, filled);
+            }
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < series.length; i++) {
+                    if (cursors[i] < filled[i] && (next < 0
+                            || timestamps[i][cursors[i]] < timestamps[next][cursors[next]])) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                int cursor = cursors[next]++;
+                visitor.visit(series[next].getRecordTypeId(), timestamps[next][cursor], values[next][cursor]);
+                if (cursors[next] == filled[next]) {
+                    refill(series[next], next, positions, ends, timestamps, values, cursors, filled);
+                }
+            }
+            return inserted;
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                series[i].unlockRead();
             }
         }
-        return filtered;
     }
 
+    /**
+     * Reads the next block of a series' window into its merge buffers.
+     */
+    private static void refill(TimeSeries series, int i, int[] positions, int[] ends,
+                               long[][] timestamps, double[][] values, int[] cursors, int[] filled) {
+        int count = positions[i] < ends[i] ? series.read(positions[i], ends[i], timestamps[i], values[i]) : 0;
+        positions[i] += count;
+        cursors[i] = 0;
+        filled[i] = count;
+    }
+
+    /**
+     * Passes the samples of one record type within a time range to the consumer,
+     * oldest first, without copying them.
+     *
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param startTime    the start of the time range, in milliseconds since UNIX
+     *                     epoch
+     * @param endTime      the end of the time range, in milliseconds since UNIX
+     *                     epoch
+     * @param consumer     receives the samples
+     * @return the number of samples visited
+     */
+    public int forEach(int recordTypeId, long startTime, long endTime, SampleConsumer consumer) {
+        TimeSeries series = getSeries(recordTypeId);
+        if (series == null || startTime > endTime) {
+            return 0;
+        }
+        return series.forEach(startTime, endTime, consumer);
+    }
+
+    /**
+     * Returns the most recent value of one record type in O(1).
+     *
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @return the latest value, or null if there are no records of that type
+     */
+    public LatestValue getLatest(int recordTypeId) {
+        TimeSeries series = getSeries(recordTypeId);
+        return series == null ? null : series.latest();
+    }
+
+    /**
+     * Returns the current vitals of this patient: the latest value of every
+     * record type it has records for.
+     *
+     * @return a snapshot of the latest values
+     */
+    public VitalsSnapshot getLatestVitals() {
+        Map<String, LatestValue> latest = new LinkedHashMap<>();
+        for (TimeSeries series : nonEmptySeries()) {
+            LatestValue value = series.latest();
+            if (value != null) {
+                latest.put(value.getRecordType(), value);
+            }
+        }
+        return new VitalsSnapshot(patientId, latest);
+    }
+
+    /**
+     * Returns the value of the newest record of one type at or before the given
+     * time, using a binary search instead of scanning the history.
+     *
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param timestamp    the time to look up, in milliseconds since UNIX epoch
+     * @param defaultValue the value to return if there is no such record
+     * @return the value, or {@code defaultValue}
+     */
+    public double getValueAtOrBefore(int recordTypeId, long timestamp, double defaultValue) {
+        TimeSeries series = getSeries(recordTypeId);
+        return series == null ? defaultValue : series.valueAtOrBefore(timestamp, defaultValue);
+    }
+
+    /**
+     * Returns a read-only view of the record types this patient has records for.
+     *
+     * @return the labels of the stored record types, in record type id order
+     */
+    public List<String> getRecordTypes() {
+        List<String> types = new ArrayList<>();
+        for (TimeSeries series : nonEmptySeries()) {
+            types.add(RecordTypes.labelOf(series.getRecordTypeId()));
+        }
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * Retrieves pre-aggregated min/max/average/count buckets of one record type.
+     * The buckets are maintained as records are added, so long ranges are
+     * answered without reading raw records.
+     *
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param startTime    the start of the time range, in milliseconds since UNIX
+     *                     epoch
+     * @param endTime      the end of the time range, in milliseconds since UNIX
+     *                     epoch
+     * @param resolution   the bucket width
+     * @return the buckets overlapping the range, oldest first
+     */
+    public List<Aggregate> getAggregates(int recordTypeId, long startTime, long endTime, Resolution resolution) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        TimeSeries series = getSeries(recordTypeId);
+        if (series != null && startTime <= endTime) {
+            series.collectAggregates(startTime, endTime, resolution, aggregates);
+        }
+        return aggregates;
+    }
 
     /**
      * Retrieves the unique identifier for this patient.
@@ -72,8 +419,31 @@ public class Patient {
         return patientId;
     }
 
+    TimeSeries[] nonEmptySeries() {
+        TimeSeries[] all = seriesByType;
+        int count = 0;
+        for (TimeSeries series : all) {
+            if (series != null) {
+                count++;
+            }
+        }
+        TimeSeries[] present = new TimeSeries[count];
+        count = 0;
+        for (TimeSeries series : all) {
+            if (series != null) {
+                present[count++] = series;
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Retrieves all records of this patient in timestamp order.
+     *
+     * @return a list of every PatientRecord stored for this patient
+     */
     public List<PatientRecord> getRecords() {
-        return patientRecords;
+        return getRecords(Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
 }
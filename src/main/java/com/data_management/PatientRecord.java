@@ -11,7 +11,7 @@ package com.data_management;
  */
 public class PatientRecord {
     private int patientId;
-    private String recordType; // Example: ECG, blood pressure, etc.
+    private int recordTypeId; // Id from RecordTypes; the label is derived from it
     private double measurementValue; // Example: heart rate
     private long timestamp;
 
@@ -26,9 +26,22 @@ public class PatientRecord {
      *                         milliseconds since epoch
      */
     public PatientRecord(int patientId, double measurementValue, String recordType, long timestamp) {
+        this(patientId, measurementValue, RecordTypes.idOf(recordType), timestamp);
+    }
+
+    /**
+     * Constructs a new patient record for an already resolved record type.
+     *
+     * @param patientId        the unique identifier for the patient
+     * @param measurementValue the numerical value of the recorded measurement
+     * @param recordTypeId     the record type id from {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was recorded, in
+     *                         milliseconds since epoch
+     */
+    public PatientRecord(int patientId, double measurementValue, int recordTypeId, long timestamp) {
         this.patientId = patientId;
         this.measurementValue = measurementValue;
-        this.recordType = recordType;
+        this.recordTypeId = recordTypeId;
         this.timestamp = timestamp;
     }
 
@@ -61,11 +74,21 @@ public class PatientRecord {
 
     /**
      * Returns the type of record (e.g., "ECG", "Blood Pressure").
+     * Aliases are returned as their canonical label.
      * 
      * @return the record type
      */
     public String getRecordType() {
-        return recordType;
+        return RecordTypes.labelOf(recordTypeId);
+    }
+
+    /**
+     * Returns the id of the record type as registered in {@link RecordTypes}.
+     * 
+     * @return the record type id
+     */
+    public int getRecordTypeId() {
+        return recordTypeId;
     }
 
     
@@ -1,6 +1,27 @@
 package com.data_management;
 
+/**
+ * Reads records from a live source and adds them to the storage as they
+ * arrive.
+ */
 public interface RealTimeDataReader {
-    void connectToWebSocket(String url);
+    /**
+     * Connects to a source, e.g. {@code ws://localhost:8080} or
+     * {@code tcp://localhost:8081} depending on the implementation.
+     *
+     * @param url the address of the source
+     */
+    void connect(String url);
+
+    /**
+     * Connects to a WebSocket server. Kept for existing callers; equivalent to
+     * {@link #connect(String)}.
+     *
+     * @param url the WebSocket URI to connect to
+     */
+    default void connectToWebSocket(String url) {
+        connect(url);
+    }
+
     void disconnect();
 }
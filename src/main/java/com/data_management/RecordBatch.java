@@ -0,0 +1,98 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A growable, column-oriented buffer of records that is handed to
+ * {@link DataStorage#addPatientData(RecordBatch)} in one call. Readers fill
+ * one batch per worker without touching shared state and merge it into the
+ * storage in bulk, instead of paying a map lookup and a retention check per
+ * record.
+ * <p>
+ * A batch is not thread-safe; it is meant to be owned by one thread and
+ * reused after {@link #clear()}.
+ */
+public final class RecordBatch {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int[] patientIds;
+    private int[] recordTypeIds;
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    /**
+     * Constructs an empty batch.
+     */
+    public RecordBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty batch sized for the given number of records.
+     *
+     * @param capacity the initial capacity
+     */
+    public RecordBatch(int capacity) {
+        int initial = Math.max(1, capacity);
+        patientIds = new int[initial];
+        recordTypeIds = new int[initial];
+        timestamps = new long[initial];
+        values = new double[initial];
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the measured value
+     * @param recordTypeId     the record type id from {@link RecordTypes}
+     * @param timestamp        the time of the measurement in milliseconds since
+     *                         epoch
+     */
+    public void add(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        if (size == patientIds.length) {
+            int capacity = size * 2;
+            patientIds = Arrays.copyOf(patientIds, capacity);
+            recordTypeIds = Arrays.copyOf(recordTypeIds, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        patientIds[size] = patientId;
+        recordTypeIds[size] = recordTypeId;
+        timestamps[size] = timestamp;
+        values[size] = measurementValue;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all records, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int getPatientId(int index) {
+        return patientIds[index];
+    }
+
+    public int getRecordTypeId(int index) {
+        return recordTypeIds[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getMeasurementValue(int index) {
+        return values[index];
+    }
+}
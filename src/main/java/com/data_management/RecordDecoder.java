@@ -0,0 +1,21 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes one line or message of some text format into records.
+ */
+public interface RecordDecoder {
+    /**
+     * Decodes the bytes in {@code [start, end)} of the buffer and adds the
+     * records they hold to the batch. Nothing is added if the input is
+     * invalid.
+     *
+     * @param buffer the buffer holding the input; its position is not changed
+     * @param start  the index of the first byte
+     * @param end    the index after the last byte
+     * @param batch  receives the records
+     * @return false if the input is invalid
+     */
+    boolean decode(ByteBuffer buffer, int start, int end, RecordBatch batch);
+}
@@ -0,0 +1,152 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Central registry of record types. Every label seen at ingestion time is
+ * mapped to a small, dense integer id once, so storage and alert dispatch can
+ * work with ids and array lookups instead of comparing strings per record.
+ * <p>
+ * The well-known types used by the alert engine have fixed ids. Other labels
+ * (e.g. "Cholesterol") are assigned the next free id the first time they are
+ * seen. Aliases are normalized to one canonical label, so the simulator's
+ * "Saturation" and the alert engine's "OxygenSaturation" share one id.
+ * <p>
+ * Ids are only stable for the lifetime of the process; anything persisted
+ * must store the label.
+ * <p>
+ * Registered labels are never freed and every id widens per-patient tables,
+ * so at most {@value #MAX_TYPES} types can be registered. Parsers of data
+ * from outside the process use {@link #tryIdOf(String)}, which rejects new
+ * labels once the registry is full and counts them, instead of failing.
+ */
+public final class RecordTypes {
+
+    public static final int ECG = 0;
+    public static final int SYSTOLIC_PRESSURE = 1;
+    public static final int DIASTOLIC_PRESSURE = 2;
+    public static final int OXYGEN_SATURATION = 3;
+    public static final int ALERT = 4;
+    public static final int MANUAL_ALERT = 5;
+
+    /** The most record types that can be registered. */
+    public static final int MAX_TYPES = 1024;
+
+    private static final ConcurrentMap<String, Integer> idsByLabel = new ConcurrentHashMap<>();
+    private static final LongAdder rejectedLabels = new LongAdder();
+    private static volatile String[] labels = new String[16]; // grown by doubling, filled up to count
+    private static volatile int count;
+
+    static {
+        register("ECG");
+        register("SystolicPressure");
+        register("DiastolicPressure");
+        register("OxygenSaturation");
+        register("Alert");
+        register("ManualAlert");
+        alias("Saturation", OXYGEN_SATURATION);
+    }
+
+    private RecordTypes() {
+        // Static registry, not meant to be instantiated
+    }
+
+    /**
+     * Returns the id for the given label, registering it if it has not been
+     * seen before. Aliases resolve to the id of their canonical label.
+     *
+     * @param label the record type label, e.g. "ECG"
+     * @return the dense integer id of the record type
+     * @throws IllegalStateException if the label is new and
+     *                               {@value #MAX_TYPES} types are registered
+     */
+    public static int idOf(String label) {
+        int id = tryIdOf(label);
+        if (id < 0) {
+            throw new IllegalStateException("Too many record types, cannot register " + label);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id for the given label like {@link #idOf(String)}, but
+     * rejects a new label when {@value #MAX_TYPES} types are registered.
+     *
+     * @param label the record type label
+     * @return the id, or -1 if the label was rejected
+     */
+    public static int tryIdOf(String label) {
+        Integer id = idsByLabel.get(label);
+        if (id != null) {
+            return id;
+        }
+        return register(label);
+    }
+
+    /**
+     * Returns how many times a new label was rejected because the registry
+     * was full.
+     *
+     * @return the number of rejected labels
+     */
+    public static long getRejectedLabelCount() {
+        return rejectedLabels.sum();
+    }
+
+    /**
+     * Returns the id for the given label without registering it.
+     *
+     * @param label the record type label
+     * @return the id, or -1 if the label is unknown
+     */
+    public static int find(String label) {
+        Integer id = idsByLabel.get(label);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the canonical label of a record type id.
+     *
+     * @param id a record type id returned by {@link #idOf(String)}
+     * @return the canonical label
+     */
+    public static String labelOf(int id) {
+        return labels[id];
+    }
+
+    /**
+     * Returns the number of registered record types. All ids are in the range
+     * {@code [0, count())}, which makes them suitable as array indexes.
+     *
+     * @return the number of registered record types
+     */
+    public static int count() {
+        return count;
+    }
+
+    private static synchronized int register(String label) {
+        Integer existing = idsByLabel.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        int id = count;
+        if (id == MAX_TYPES) {
+            rejectedLabels.increment();
+            return -1;
+        }
+        if (id == labels.length) {
+            labels = Arrays.copyOf(labels, id * 2);
+        }
+        labels[id] = label;
+        count = id + 1; // publish the label before the id becomes visible
+        idsByLabel.put(label, id);
+        return id;
+    }
+
+    private static synchronized void alias(String alias, int id) {
+        idsByLabel.put(alias, id);
+    }
+}
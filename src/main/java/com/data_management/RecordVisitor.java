@@ -0,0 +1,21 @@
+package com.data_management;
+
+/**
+ * Receives the records of a patient across all record types from
+ * {@link Patient#forEachRecord(long, long, RecordVisitor)}, in timestamp
+ * order and without a {@link PatientRecord} being allocated per record.
+ * <p>
+ * The visitor runs while the patient's series are read-locked, so it must
+ * not add records to the same patient.
+ */
+@FunctionalInterface
+public interface RecordVisitor {
+    /**
+     * Visits one record.
+     *
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param timestamp    the time of the record in milliseconds since epoch
+     * @param value        the measured value
+     */
+    void visit(int recordTypeId, long timestamp, double value);
+}
@@ -0,0 +1,58 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Restores a {@link DataStorage} from the directory of a {@link WriteAheadLog}:
+ * the newest readable {@link StorageSnapshot} is loaded and only the log
+ * segments written after it are replayed. If the directory holds neither, the
+ * fallback reader is used instead, e.g. to import the simulator's text files
+ * on the very first start.
+ */
+public class RecoveryDataReader implements BatchDataReader {
+    private final Path directory;
+    private final BatchDataReader fallback;
+
+    /**
+     * Creates a reader for the given log directory.
+     *
+     * @param directory the directory holding the snapshots and log segments
+     * @param fallback  the reader to use when there is nothing to recover, or
+     *                  null for none
+     */
+    public RecoveryDataReader(Path directory, BatchDataReader fallback) {
+        this.directory = directory;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void readData(DataStorage storage) throws IOException {
+        List<Path> snapshots = StorageSnapshot.snapshots(directory);
+        List<Path> segments = WriteAheadLog.segments(directory);
+        if (snapshots.isEmpty() && segments.isEmpty()) {
+            if (fallback != null) {
+                fallback.readData(storage);
+            }
+            return;
+        }
+
+        long firstSegment = 0;
+        for (Path snapshot : snapshots) {
+            try {
+                firstSegment = StorageSnapshot.load(snapshot, storage);
+                break;
+            } catch (IOException e) {
+                // a crash while writing the newest snapshot leaves older ones intact
+                System.err.println("Skipping unreadable snapshot " + snapshot + ": " + e.getMessage());
+                storage.reset();
+            }
+        }
+        for (Path segment : segments) {
+            if (WriteAheadLog.segmentNumber(segment) >= firstSegment) {
+                WriteAheadLog.replay(segment, storage);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.data_management;
+
+/**
+ * Bucket widths at which {@link DataStorage} keeps pre-aggregated rollups of
+ * every series. Each resolution keeps a bounded number of its most recent
+ * buckets, independent of how many raw samples are retained; the
+ * {@link RetentionPolicy} sets the bound, by default the one given here.
+ */
+public enum Resolution {
+    MINUTE(60_000L, 7 * 24 * 60),
+    HOUR(3_600_000L, 90 * 24),
+    DAY(86_400_000L, 5 * 365);
+
+    private final long widthMillis;
+    private final int retainedBuckets;
+
+    Resolution(long widthMillis, int retainedBuckets) {
+        this.widthMillis = widthMillis;
+        this.retainedBuckets = retainedBuckets;
+    }
+
+    /**
+     * Returns the width of one bucket.
+     *
+     * @return the bucket width in milliseconds
+     */
+    public long getWidthMillis() {
+        return widthMillis;
+    }
+
+    /**
+     * Returns how many of the most recent buckets are kept per series unless
+     * the retention policy says otherwise.
+     *
+     * @return the default number of retained buckets
+     */
+    public int getRetainedBuckets() {
+        return retainedBuckets;
+    }
+
+    /**
+     * Returns the start of the bucket that contains the given time.
+     *
+     * @param timestamp a time in milliseconds since epoch
+     * @return the start of its bucket in milliseconds since epoch
+     */
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, widthMillis) * widthMillis;
+    }
+}
@@ -0,0 +1,122 @@
+package com.data_management;
+
+/**
+ * Describes how much history {@link DataStorage} keeps. A policy can bound
+ * each series (one patient and record type) by age and by sample count, and
+ * bound the whole storage by a total sample budget. Whenever a limit is
+ * exceeded the oldest samples are evicted first.
+ * <p>
+ * Rollup buckets are not samples and do not count against the budget.
+ * Instead each series keeps at most {@link #getRetainedBuckets(Resolution)}
+ * of the most recent buckets per {@link Resolution}, at about 40 bytes each.
+ * With the defaults that is up to about 14,000 buckets, or 560 KB, per
+ * series; use {@link #withRetainedBuckets} to keep fewer when heap use must
+ * stay flat across many patients.
+ * <p>
+ * Policies are immutable; use {@link DataStorage#setRetentionPolicy} to
+ * switch to a different one at runtime.
+ */
+public final class RetentionPolicy {
+
+    /** Marker for a limit that is not enforced. */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final RetentionPolicy UNBOUNDED = new RetentionPolicy(UNLIMITED, Integer.MAX_VALUE, UNLIMITED);
+
+    private final long maxAgeMillis;
+    private final int maxSamplesPerSeries;
+    private final long maxTotalSamples;
+    private final int[] retainedBuckets; // indexed by Resolution ordinal
+
+    /**
+     * Constructs a retention policy.
+     *
+     * @param maxAgeMillis        samples older than the newest sample of their
+     *                            series minus this many milliseconds are evicted;
+     *                            {@link #UNLIMITED} to disable
+     * @param maxSamplesPerSeries the number of samples kept per patient and record
+     *                            type; {@code Integer.MAX_VALUE} to disable
+     * @param maxTotalSamples     the number of samples kept across all patients;
+     *                            {@link #UNLIMITED} to disable
+     */
+    public RetentionPolicy(long maxAgeMillis, int maxSamplesPerSeries, long maxTotalSamples) {
+        this(maxAgeMillis, maxSamplesPerSeries, maxTotalSamples, defaultRetainedBuckets());
+    }
+
+    private RetentionPolicy(long maxAgeMillis, int maxSamplesPerSeries, long maxTotalSamples,
+                            int[] retainedBuckets) {
+        if (maxAgeMillis <= 0 || maxSamplesPerSeries <= 0 || maxTotalSamples <= 0) {
+            throw new IllegalArgumentException("Retention limits must be positive");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxSamplesPerSeries = maxSamplesPerSeries;
+        this.maxTotalSamples = maxTotalSamples;
+        this.retainedBuckets = retainedBuckets;
+    }
+
+    private static int[] defaultRetainedBuckets() {
+        Resolution[] resolutions = Resolution.values();
+        int[] buckets = new int[resolutions.length];
+        for (Resolution resolution : resolutions) {
+            buckets[resolution.ordinal()] = resolution.getRetainedBuckets();
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns a copy of this policy that keeps the given number of rollup
+     * buckets per series at one resolution.
+     *
+     * @param resolution the resolution to limit
+     * @param buckets    the number of most recent buckets to keep
+     * @return the new policy
+     */
+    public RetentionPolicy withRetainedBuckets(Resolution resolution, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Retention limits must be positive");
+        }
+        int[] updated = retainedBuckets.clone();
+        updated[resolution.ordinal()] = buckets;
+        return new RetentionPolicy(maxAgeMillis, maxSamplesPerSeries, maxTotalSamples, updated);
+    }
+
+    /**
+     * Returns the policy that keeps every sample forever.
+     *
+     * @return the unbounded policy
+     */
+    public static RetentionPolicy unbounded() {
+        return UNBOUNDED;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public int getMaxSamplesPerSeries() {
+        return maxSamplesPerSeries;
+    }
+
+    public long getMaxTotalSamples() {
+        return maxTotalSamples;
+    }
+
+    /**
+     * Returns how many of the most recent rollup buckets each series keeps at
+     * the given resolution.
+     *
+     * @param resolution the bucket width
+     * @return the number of retained buckets
+     */
+    public int getRetainedBuckets(Resolution resolution) {
+        return retainedBuckets[resolution.ordinal()];
+    }
+
+    boolean hasAgeLimit() {
+        return maxAgeMillis != UNLIMITED;
+    }
+
+    boolean hasTotalLimit() {
+        return maxTotalSamples != UNLIMITED;
+    }
+}
@@ -0,0 +1,87 @@
+package com.data_management;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for samples evicted by a {@link RetentionPolicy}, split by the
+ * limit that caused the eviction, plus the number of samples currently
+ * stored. Eviction counters are cumulative since the storage was created or
+ * last reset.
+ */
+public final class RetentionStats {
+    private final LongAdder storedSamples = new LongAdder();
+    private final LongAdder evictedByAge = new LongAdder();
+    private final LongAdder evictedBySeriesLimit = new LongAdder();
+    private final LongAdder evictedByTotalLimit = new LongAdder();
+
+    /**
+     * Returns the number of samples currently held by the storage.
+     *
+     * @return the number of stored samples
+     */
+    public long getStoredSamples() {
+        return storedSamples.sum();
+    }
+
+    /**
+     * Returns the number of samples evicted because they were older than the
+     * configured time horizon.
+     *
+     * @return the number of samples evicted by age
+     */
+    public long getEvictedByAge() {
+        return evictedByAge.sum();
+    }
+
+    /**
+     * Returns the number of samples evicted because their series reached the
+     * maximum number of samples.
+     *
+     * @return the number of samples evicted by the per-series limit
+     */
+    public long getEvictedBySeriesLimit() {
+        return evictedBySeriesLimit.sum();
+    }
+
+    /**
+     * Returns the number of samples evicted to keep the storage within its
+     * global sample budget.
+     *
+     * @return the number of samples evicted by the global limit
+     */
+    public long getEvictedByTotalLimit() {
+        return evictedByTotalLimit.sum();
+    }
+
+    /**
+     * Returns the total number of evicted samples.
+     *
+     * @return the sum of all eviction counters
+     */
+    public long getTotalEvicted() {
+        return getEvictedByAge() + getEvictedBySeriesLimit() + getEvictedByTotalLimit();
+    }
+
+    void addStoredSamples(long delta) {
+        storedSamples.add(delta);
+    }
+
+    void recordAgeEvictions(int count) {
+        evictedByAge.add(count);
+    }
+
+    void recordSeriesLimitEvictions(int count) {
+        evictedBySeriesLimit.add(count);
+    }
+
+    void recordTotalLimitEvictions(int count) {
+        evictedByTotalLimit.add(count);
+    }
+
+    void reset() {
+        storedSamples.reset();
+        evictedByAge.reset();
+        evictedBySeriesLimit.reset();
+        evictedByTotalLimit.reset();
+    }
+}
@@ -0,0 +1,130 @@
+package com.data_management;
+
+/**
+ * Base class for sample stores laid out as a ring buffer of fixed-width
+ * (timestamp, value) slots. Evicting the oldest samples only moves the head,
+ * and the buffer grows in powers of two so a slot is found with a mask.
+ * Subclasses decide where the slots live.
+ */
+abstract class RingSampleStore implements SampleStore {
+    static final int INITIAL_CAPACITY = 16; // must be a power of two
+
+    private int capacity;
+    private int mask;
+    private int head; // physical slot of the oldest sample
+    private int size;
+
+    RingSampleStore() {
+        this.capacity = INITIAL_CAPACITY;
+        this.mask = INITIAL_CAPACITY - 1;
+    }
+
+    /**
+     * Reads the timestamp stored in the given physical slot.
+     */
+    abstract long timestampInSlot(int slot);
+
+    /**
+     * Reads the value stored in the given physical slot.
+     */
+    abstract double valueInSlot(int slot);
+
+    /**
+     * Writes a sample into the given physical slot.
+     */
+    abstract void writeSlot(int slot, long timestamp, double value);
+
+    /**
+     * Replaces the backing storage with one of the given capacity, holding
+     * the current samples in logical order starting at slot 0.
+     */
+    abstract void reallocate(int newCapacity);
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long timestampAt(int index) {
+        return timestampInSlot((head + index) & mask);
+    }
+
+    @Override
+    public double valueAt(int index) {
+        return valueInSlot((head + index) & mask);
+    }
+
+    @Override
+    public void append(long timestamp, double value) {
+        ensureCapacity();
+        writeSlot((head + size) & mask, timestamp, value);
+        size++;
+    }
+
+    @Override
+    public void insert(int index, long timestamp, double value) {
+        ensureCapacity();
+        for (int i = size; i > index; i--) {
+            int from = (head + i - 1) & mask;
+            writeSlot((head + i) & mask, timestampInSlot(from), valueInSlot(from));
+        }
+        writeSlot((head + index) & mask, timestamp, value);
+        size++;
+    }
+
+    /**
+     * Merges the batch in place from the back, so only the samples newer than
+     * the oldest sample of the batch are moved, each exactly once.
+     */
+    @Override
+    public void mergeSorted(long[] timestamps, double[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        while (size + count > capacity) {
+            grow();
+        }
+        int stop = upperBound(timestamps[0]); // samples before this index stay where they are
+        int from = size - 1;
+        int batch = count - 1;
+        for (int to = size + count - 1; batch >= 0; to--) {
+            int target = (head + to) & mask;
+            if (from >= stop && timestampAt(from) > timestamps[batch]) {
+                int source = (head + from) & mask;
+                writeSlot(target, timestampInSlot(source), valueInSlot(source));
+                from--;
+            } else {
+                writeSlot(target, timestamps[batch], values[batch]);
+                batch--;
+            }
+        }
+        size += count;
+    }
+
+    @Override
+    public int removeFirst(int count) {
+        int removed = Math.min(count, size);
+        head = (head + removed) & mask;
+        size -= removed;
+        return removed;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private void ensureCapacity() {
+        if (size == capacity) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        int newCapacity = capacity << 1;
+        reallocate(newCapacity);
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        head = 0;
+    }
+}
@@ -0,0 +1,174 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incrementally maintained min/max/sum/count buckets of one series at one
+ * {@link Resolution}. Buckets are stored column-wise in start order; an
+ * in-order sample updates or appends the last bucket in O(1), a late sample
+ * binary-searches its bucket. Only the most recent
+ * {@link RetentionPolicy#getRetainedBuckets(Resolution)} buckets are kept.
+ * <p>
+ * Not thread-safe; the owning {@link TimeSeries} guards it with its lock.
+ */
+class Rollup {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final Resolution resolution;
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private double[] mins = new double[INITIAL_CAPACITY];
+    private double[] maxs = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int first; // index of the oldest retained bucket
+    private int end;   // one past the newest bucket
+
+    Rollup(Resolution resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Adds a sample to the bucket containing its timestamp.
+     */
+    void add(long timestamp, double value, RetentionPolicy policy) {
+        long start = resolution.bucketStart(timestamp);
+        int retained = policy.getRetainedBuckets(resolution);
+        int index;
+        if (end > first && starts[end - 1] == start) {
+            index = end - 1;
+        } else if (end == first || starts[end - 1] < start) {
+            index = appendBucket(start, retained);
+        } else {
+            index = search(start);
+            if (index < first) {
+                return; // older than every retained bucket
+            }
+            if (index == end || starts[index] != start) {
+                index = insertBucket(index, start, retained);
+                if (index < first) {
+                    return; // the new bucket was the oldest and did not fit
+                }
+            }
+        }
+        if (value < mins[index]) {
+            mins[index] = value;
+        }
+        if (value > maxs[index]) {
+            maxs[index] = value;
+        }
+        sums[index] += value;
+        counts[index]++;
+    }
+
+    /**
+     * Drops the oldest buckets beyond the policy's limit and releases the
+     * space they took. Used when the policy of an existing series changes.
+     */
+    void trim(RetentionPolicy policy) {
+        int retained = policy.getRetainedBuckets(resolution);
+        if (end - first <= retained) {
+            return;
+        }
+        first = end - retained;
+        int capacity = Math.max(INITIAL_CAPACITY, retained);
+        if (capacity < starts.length) {
+            starts = Arrays.copyOfRange(starts, first, first + capacity);
+            mins = Arrays.copyOfRange(mins, first, first + capacity);
+            maxs = Arrays.copyOfRange(maxs, first, first + capacity);
+            sums = Arrays.copyOfRange(sums, first, first + capacity);
+            counts = Arrays.copyOfRange(counts, first, first + capacity);
+            first = 0;
+            end = retained;
+        }
+    }
+
+    /**
+     * Appends the buckets overlapping {@code [startTime, endTime]} to the result.
+     */
+    void collect(long startTime, long endTime, List<Aggregate> result) {
+        for (int i = search(resolution.bucketStart(startTime)); i < end && starts[i] <= endTime; i++) {
+            result.add(new Aggregate(starts[i], resolution, mins[i], maxs[i], sums[i], counts[i]));
+        }
+    }
+
+    /**
+     * Returns the index of the first bucket starting at or after the given
+     * start, searching the retained buckets only.
+     */
+    private int search(long start) {
+        int low = first;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int appendBucket(long start, int retained) {
+        if (end - first >= retained) {
+            first = end - retained + 1;
+        }
+        makeRoom();
+        initBucket(end, start);
+        return end++;
+    }
+
+    private int insertBucket(int index, long start, int retained) {
+        int offset = index - first;
+        makeRoom();
+        index = first + offset;
+        int moved = end - index;
+        System.arraycopy(starts, index, starts, index + 1, moved);
+        System.arraycopy(mins, index, mins, index + 1, moved);
+        System.arraycopy(maxs, index, maxs, index + 1, moved);
+        System.arraycopy(sums, index, sums, index + 1, moved);
+        System.arraycopy(counts, index, counts, index + 1, moved);
+        initBucket(index, start);
+        end++;
+        if (end - first > retained) {
+            first = end - retained;
+        }
+        return index;
+    }
+
+    private void initBucket(int index, long start) {
+        starts[index] = start;
+        mins[index] = Double.POSITIVE_INFINITY;
+        maxs[index] = Double.NEGATIVE_INFINITY;
+        sums[index] = 0;
+        counts[index] = 0;
+    }
+
+    /**
+     * Makes sure there is a free slot at {@code end}, compacting evicted
+     * buckets away or growing the arrays.
+     */
+    private void makeRoom() {
+        if (end < starts.length) {
+            return;
+        }
+        int live = end - first;
+        if (first > 0 && live <= starts.length / 2) {
+            System.arraycopy(starts, first, starts, 0, live);
+            System.arraycopy(mins, first, mins, 0, live);
+            System.arraycopy(maxs, first, maxs, 0, live);
+            System.arraycopy(sums, first, sums, 0, live);
+            System.arraycopy(counts, first, counts, 0, live);
+        } else {
+            int capacity = starts.length << 1;
+            starts = Arrays.copyOfRange(starts, first, first + capacity);
+            mins = Arrays.copyOfRange(mins, first, first + capacity);
+            maxs = Arrays.copyOfRange(maxs, first, first + capacity);
+            sums = Arrays.copyOfRange(sums, first, first + capacity);
+            counts = Arrays.copyOfRange(counts, first, first + capacity);
+        }
+        first = 0;
+        end = live;
+    }
+}
@@ -0,0 +1,20 @@
+package com.data_management;
+
+/**
+ * Receives the samples of one series from a visitor query such as
+ * {@link DataStorage#forEach(int, String, long, long, SampleConsumer)},
+ * one primitive (timestamp, value) pair at a time and in timestamp order.
+ * <p>
+ * The consumer runs while the series is read-locked, so it must not add
+ * records to the same patient.
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+    /**
+     * Accepts one sample.
+     *
+     * @param timestamp the time of the sample in milliseconds since epoch
+     * @param value     the measured value
+     */
+    void accept(long timestamp, double value);
+}
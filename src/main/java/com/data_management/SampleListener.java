@@ -0,0 +1,24 @@
+package com.data_management;
+
+/**
+ * Is told about every sample added to a {@link DataStorage} through one of
+ * its {@code addPatientData} methods, right after the sample is stored.
+ * Samples loaded during recovery are not reported.
+ * <p>
+ * The listener runs on the thread that added the sample, so it should be
+ * quick and must be safe to call from several ingestion threads at once.
+ * Exceptions it throws are counted by the storage, see
+ * {@link DataStorage#getListenerFailureCount()}, and do not stop ingestion.
+ */
+@FunctionalInterface
+public interface SampleListener {
+    /**
+     * Receives one stored sample.
+     *
+     * @param patient      the patient the sample was stored for
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param timestamp    the time of the sample in milliseconds since epoch
+     * @param value        the measured value
+     */
+    void onSample(Patient patient, int recordTypeId, long timestamp, double value);
+}
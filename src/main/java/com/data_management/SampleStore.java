@@ -0,0 +1,126 @@
+package com.data_management;
+
+/**
+ * Physical storage of the time-ordered samples of one {@link TimeSeries}.
+ * Implementations only store and address samples; ordering, locking and
+ * retention are handled by the owning series.
+ * <p>
+ * Samples are addressed by their logical index, with 0 being the oldest
+ * sample. Implementations are not thread-safe.
+ */
+interface SampleStore {
+
+    /**
+     * Returns the number of stored samples.
+     */
+    int size();
+
+    /**
+     * Returns the timestamp of the sample at the given logical index.
+     */
+    long timestampAt(int index);
+
+    /**
+     * Returns the value of the sample at the given logical index.
+     */
+    double valueAt(int index);
+
+    /**
+     * Copies samples from the given index on into the arrays, at most up to
+     * {@code to} and as many as the arrays hold. Implementations may copy
+     * fewer, for example to stop at a block boundary, but always at least one
+     * sample when {@code from < to}. Range scans should read in blocks this
+     * way rather than call {@link #timestampAt} per sample.
+     *
+     * @param from       the index of the first sample to copy
+     * @param to         the index after the last sample that may be copied
+     * @param timestamps receives the timestamps from index 0
+     * @param values     receives the values from index 0
+     * @return the number of samples copied
+     */
+    default int read(int from, int to, long[] timestamps, double[] values) {
+        int count = Math.min(to - from, timestamps.length);
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = timestampAt(from + i);
+            values[i] = valueAt(from + i);
+        }
+        return count;
+    }
+
+    /**
+     * Passes the samples in {@code [from, to)} to the consumer, oldest first.
+     */
+    default void forEach(int from, int to, SampleConsumer consumer) {
+        for (int i = from; i < to; i++) {
+            consumer.accept(timestampAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * Appends a sample after all stored samples. The caller guarantees that
+     * the timestamp is not smaller than the last stored timestamp.
+     */
+    void append(long timestamp, double value);
+
+    /**
+     * Inserts a sample at the given logical index, shifting the newer samples.
+     */
+    void insert(int index, long timestamp, double value);
+
+    /**
+     * Merges a batch of samples, sorted by timestamp, into the store. Samples
+     * with a timestamp equal to a stored one are placed after it.
+     *
+     * @param timestamps the timestamps of the batch, in ascending order
+     * @param values     the values of the batch
+     * @param count      the number of samples to take from the arrays
+     */
+    default void mergeSorted(long[] timestamps, double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            insert(upperBound(timestamps[i]), timestamps[i], values[i]);
+        }
+    }
+
+    /**
+     * Evicts up to {@code count} of the oldest samples.
+     *
+     * @return the number of samples actually evicted
+     */
+    int removeFirst(int count);
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or
+     * equal to the given time, or {@link #size()} if there is none.
+     */
+    default int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater
+     * than the given time, or {@link #size()} if there is none.
+     */
+    default int upperBound(long timestamp) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,56 @@
+package com.data_management;
+
+/**
+ * Selects where {@link DataStorage} keeps the samples of each series.
+ * The default can be set with the {@code cardio.storage.backend} system
+ * property ({@code heap}, {@code offheap} or {@code compressed}).
+ */
+public enum StorageBackend {
+    /** Samples live in primitive arrays on the Java heap. */
+    HEAP {
+        @Override
+        SampleStore newStore() {
+            return new HeapSampleStore();
+        }
+    },
+    /** Samples live in direct byte buffers outside the Java heap. */
+    OFF_HEAP {
+        @Override
+        SampleStore newStore() {
+            return new OffHeapSampleStore();
+        }
+    },
+    /**
+     * Older samples are compressed in chunks on the Java heap, which keeps
+     * several times more history in memory at the cost of decoding chunks
+     * when old data is read.
+     */
+    COMPRESSED {
+        @Override
+        SampleStore newStore() {
+            return new CompressedSampleStore();
+        }
+    };
+
+    /**
+     * Creates an empty sample store for one series.
+     */
+    abstract SampleStore newStore();
+
+    /**
+     * Returns the backend named by the {@code cardio.storage.backend} system
+     * property, or {@link #HEAP} if it is not set or not recognized.
+     *
+     * @return the configured default backend
+     */
+    public static StorageBackend fromSystemProperty() {
+        String name = System.getProperty("cardio.storage.backend", "heap");
+        if (name.equalsIgnoreCase("offheap") || name.equalsIgnoreCase("off_heap")) {
+            return OFF_HEAP;
+        }
+        if (name.equalsIgnoreCase("compressed")) {
+            return COMPRESSED;
+        }
+        return HEAP;
+    }
+}
@@ -0,0 +1,229 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary image of every sample held by a {@link DataStorage}, written
+ * next to the {@link WriteAheadLog} so that a restart loads one file instead
+ * of replaying or re-parsing the whole history.
+ * <p>
+ * A snapshot named {@code snapshot-<n>.snap} contains everything logged in
+ * segments before {@code n}, and possibly some samples of segment {@code n}
+ * itself. Each series is saved with the write-ahead log position of its
+ * newest logged sample, and replay skips every sample at or before it, so
+ * samples evicted before the snapshot stay evicted and duplicate samples in
+ * the log are kept. Only stored samples are written, so rollups and latest
+ * values are rebuilt from the retained history on load.
+ * <p>
+ * Layout: header (magic, version, segment number), the record type labels,
+ * then per patient and series the type id, log position, sample count and
+ * the samples as (timestamp, value) pairs. A CRC-32 trailer guards against
+ * torn writes. Snapshots are written to a temporary file that is forced to
+ * disk before it is moved into place, and the directory is forced after the
+ * move, so a snapshot is durable before older files are deleted.
+ */
+public final class StorageSnapshot {
+    static final String PREFIX = "snapshot-";
+    static final String SUFFIX = ".snap";
+
+    private static final int MAGIC = 0x43565353; // "CVSS"
+    private static final int VERSION = 2;
+    private static final int END_OF_PATIENTS = -1;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private StorageSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the storage into the given directory.
+     *
+     * @param storage   the storage to save
+     * @param directory the directory holding the write-ahead log
+     * @param segment   the first log segment not fully contained in the snapshot
+     * @return the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static Path write(DataStorage storage, Path directory, long segment) throws IOException {
+        Path target = directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream file = Channels.newOutputStream(channel);
+            CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, BUFFER_BYTES));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment);
+
+            int labels = RecordTypes.count();
+            out.writeInt(labels);
+            for (int id = 0; id < labels; id++) {
+                out.writeUTF(RecordTypes.labelOf(id));
+            }
+
+            long[] timestamps = new long[CompressedSampleStore.CHUNK_SAMPLES];
+            double[] values = new double[CompressedSampleStore.CHUNK_SAMPLES];
+            for (Patient patient : storage.getAllPatients()) {
+                TimeSeries[] series = patient.nonEmptySeries();
+                out.writeInt(patient.getPatientId());
+                out.writeInt(series.length);
+                for (TimeSeries s : series) {
+                    s.lockRead();
+                    try {
+                        out.writeInt(s.getRecordTypeId());
+                        out.writeLong(s.getLogPosition());
+                        out.writeInt(s.size());
+                        for (int i = 0; i < s.size(); ) {
+                            int count = s.read(i, s.size(), timestamps, values);
+                            for (int j = 0; j < count; j++) {
+                                out.writeLong(timestamps[j]);
+                                out.writeDouble(values[j]);
+                            }
+                            i += count;
+                        }
+                    } finally {
+                        s.unlockRead();
+                    }
+                }
+            }
+            out.writeInt(END_OF_PATIENTS);
+            out.flush();
+            file.write(ByteBuffer.allocate(8).putLong(checked.getChecksum().getValue()).array());
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(directory);
+        return target;
+    }
+
+    /**
+     * Loads a snapshot into an empty storage.
+     *
+     * @param snapshot the snapshot file
+     * @param storage  the storage to restore into
+     * @return the first log segment that must be replayed on top of it
+     * @throws IOException if the snapshot cannot be read or is corrupt
+     */
+    public static long load(Path snapshot, DataStorage storage) throws IOException {
+        verifyChecksum(snapshot);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot), BUFFER_BYTES))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a storage snapshot: " + snapshot);
+            }
+            long segment = in.readLong();
+
+            int[] typeIds = new int[in.readInt()]; // snapshot id -> RecordTypes id
+            for (int i = 0; i < typeIds.length; i++) {
+                typeIds[i] = RecordTypes.idOf(in.readUTF());
+            }
+
+            int patientId;
+            while ((patientId = in.readInt()) != END_OF_PATIENTS) {
+                int seriesCount = in.readInt();
+                for (int s = 0; s < seriesCount; s++) {
+                    int recordTypeId = typeIds[in.readInt()];
+                    storage.restoreLogPosition(patientId, recordTypeId, in.readLong());
+                    int samples = in.readInt();
+                    for (int i = 0; i < samples; i++) {
+                        long timestamp = in.readLong();
+                        storage.loadPatientData(patientId, in.readDouble(), recordTypeId, timestamp);
+                    }
+                }
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Returns the snapshots in the directory, newest first.
+     *
+     * @param directory the directory holding the write-ahead log
+     * @return the snapshot files
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<Path> snapshots(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted((a, b) -> Long.compare(segmentOf(b), segmentOf(a)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the log segment a snapshot file was taken at.
+     *
+     * @param snapshot the snapshot file
+     * @return the first segment to replay on top of it
+     */
+    public static long segmentOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Forces a directory to disk, so that a file moved into it survives a
+     * crash. Some platforms cannot open directories; there the move has to
+     * be trusted.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException | UnsupportedOperationException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static void verifyChecksum(Path snapshot) throws IOException {
+        long length = Files.size(snapshot) - 8;
+        if (length < 0) {
+            throw new IOException("Truncated snapshot: " + snapshot);
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_BYTES];
+        try (InputStream in = Files.newInputStream(snapshot)) {
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Truncated snapshot: " + snapshot);
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            DataInputStream trailer = new DataInputStream(in);
+            if (trailer.readLong() != crc.getValue()) {
+                throw new IOException("Corrupt snapshot: " + snapshot);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Follows the simulator's {@code .txt} output files and {@code .jsonl} files of
+ * device messages, the same files {@link FileDataReader} reads, and ingests
+ * only the data appended since the previous read, so near-real-time
+ * ingestion from files costs in proportion to new data instead of
+ * re-reading everything.
+ * <p>
+ * For every file the reader remembers the byte offset up to which complete
+ * lines were ingested. An unfinished last line is left for the next read. A
+ * file that shrank below its offset was truncated, and a file whose identity
+ * (inode) changed was rotated; both are read again from the start. Files that
+ * appear later are picked up on the next read.
+ * <p>
+ * Each call to {@link #readData} reads what is new right now. {@link #start}
+ * does so periodically on a background thread.
+ */
+public class TailingFileDataReader implements BatchDataReader {
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+    private static final int FLUSH_THRESHOLD = 8192; // records buffered before merging, so a large backlog streams
+
+    private final String directory;
+    private final Map<Path, TailState> tails = new HashMap<>(); // guarded by this
+    private ScheduledExecutorService poller;
+
+    public TailingFileDataReader(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Ingests the lines appended to every file since the previous read.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if the directory cannot be listed
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        poll(dataStorage);
+    }
+
+    /**
+     * Ingests the lines appended to every file since the previous read.
+     *
+     * @param storage the storage where data will be stored
+     * @return the number of bytes consumed
+     * @throws IOException if the directory cannot be listed
+     */
+    public synchronized long poll(DataStorage storage) throws IOException {
+        Path dirPath = Paths.get(directory);
+        if (!Files.isDirectory(dirPath)) {
+            return 0;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(dirPath)) {
+            files = paths.filter(Files::isRegularFile)
+                         .filter(p -> p.getFileName().toString().endsWith(".txt")
+                                 || p.getFileName().toString().endsWith(".jsonl"))
+                         .collect(Collectors.toList());
+        }
+        tails.keySet().retainAll(files);
+
+        long consumed = 0;
+        for (Path path : files) {
+            TailState tail = tails.get(path);
+            if (tail == null || tail.lines.getStorage() != storage) {
+                tail = new TailState(new LineReader(path, storage, FLUSH_THRESHOLD));
+                tails.put(path, tail);
+            }
+            try {
+                consumed += readAppended(path, tail);
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + path);
+            }
+            tail.lines.flush();
+        }
+        return consumed;
+    }
+
+    /**
+     * Starts reading new data periodically on a background thread.
+     *
+     * @param storage        the storage where data will be stored
+     * @param intervalMillis the time between two reads
+     */
+    public synchronized void start(DataStorage storage, long intervalMillis) {
+        stop();
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "file-tailer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                poll(storage);
+            } catch (IOException e) {
+                System.err.println("Error tailing " + directory + ": " + e.getMessage());
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background reads started by {@link #start}.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    private long readAppended(Path path, TailState tail) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        if (attributes.size() < tail.offset || !Objects.equals(fileKey, tail.fileKey)) {
+            tail.offset = 0; // truncated or replaced by a new file
+            tail.lines.resetLineState();
+        }
+        tail.fileKey = fileKey;
+        if (attributes.size() == tail.offset) {
+            return 0;
+        }
+
+        long start = tail.offset;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(tail.offset);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            while (channel.read(buffer) > 0) {
+                int limit = buffer.position();
+                int lineStart = tail.lines.read(buffer, limit, false);
+                tail.offset += lineStart;
+
+                // keep the partial last line for the next read
+                buffer.limit(limit).position(lineStart);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        }
+        return tail.offset - start;
+    }
+
+    private static final class TailState {
+        private final LineReader lines;
+        private long offset; // end of the last complete line ingested
+        private Object fileKey;
+
+        private TailState(LineReader lines) {
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A RealTimeDataReader that reads the CSV lines sent by
+ * {@code TcpOutputStrategy} ({@code patientId,timestamp,label,data}).
+ * <p>
+ * All connections are served by one selector thread, so one reader can follow
+ * many simulator instances: call {@link #connect(String)} once per instance.
+ * Each connection reads into its own reusable direct buffer, and records are
+ * parsed in place from that buffer with a {@link RecordLineParser}, so a
+ * record costs no allocation. The records of one read are added to the
+ * storage as one batch.
+ * <p>
+ * A buffer grows to hold a long line, up to {@value #MAX_LINE_BYTES} bytes.
+ * A longer line is dropped and counted, see {@link #getDroppedLineCount()},
+ * and reading resumes at the next line.
+ */
+public class TcpDataReader implements RealTimeDataReader {
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+    private static final int FLUSH_THRESHOLD = 8192;
+    static final int MAX_LINE_BYTES = 1 << 20;
+
+    private final DataStorage storage;
+    private final LongAdder droppedLines = new LongAdder();
+    private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * Constructs a reader that adds records to the shared storage instance.
+     */
+    public TcpDataReader() {
+        this(DataStorage.getInstance());
+    }
+
+    /**
+     * Constructs a reader that adds records to the given storage.
+     *
+     * @param storage the storage to add records to
+     */
+    public TcpDataReader(DataStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Connects to a simulator's TCP output. Can be called again to read from
+     * several simulators at once.
+     *
+     * @param url the address, as {@code tcp://host:port} or {@code host:port}
+     */
+    @Override
+    public synchronized void connect(String url) {
+        InetSocketAddress address;
+        try {
+            URI uri = new URI(url.contains("://") ? url : "tcp://" + url);
+            if (uri.getHost() == null || uri.getPort() < 0) {
+                System.err.println("Invalid TCP address: " + url);
+                return;
+            }
+            address = new InetSocketAddress(uri.getHost(), uri.getPort());
+        } catch (URISyntaxException e) {
+            System.err.println("Invalid TCP address: " + url);
+            return;
+        }
+
+        try {
+            if (selector == null) {
+                selector = Selector.open();
+                running = true;
+                selectorThread = new Thread(this::run, "tcp-reader");
+                selectorThread.setDaemon(true);
+                selectorThread.start();
+            }
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            boolean connected = channel.connect(address); // may complete at once, e.g. on loopback
+            // channels are registered on the selector thread, which may be blocked in select()
+            pending.add(new Connection(channel, url, connected));
+            selector.wakeup();
+        } catch (IOException e) {
+            System.err.println("Error connecting to " + url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes all connections and stops the selector thread. Records received
+     * so far are in the storage when this returns.
+     */
+    @Override
+    public synchronized void disconnect() {
+        if (selector == null) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector = null;
+        selectorThread = null;
+    }
+
+    /**
+     * Returns how many lines were dropped for exceeding
+     * {@value #MAX_LINE_BYTES} bytes.
+     *
+     * @return the number of dropped lines
+     */
+    public long getDroppedLineCount() {
+        return droppedLines.sum();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                registerPending();
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            connection.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                            System.out.println("Connected to " + connection.url);
+                        } else if (key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Connection to " + connection.url + " failed: " + e.getMessage());
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("TCP reader stopped: " + e.getMessage());
+        } finally {
+            registerPending();
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void registerPending() {
+        Connection connection;
+        while ((connection = pending.poll()) != null) {
+            try {
+                // a channel that is already connected never becomes connectable
+                int ops = connection.connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT;
+                connection.channel.register(selector, ops, connection);
+                if (connection.connected) {
+                    System.out.println("Connected to " + connection.url);
+                }
+            } catch (IOException e) {
+                System.err.println("Error connecting to " + connection.url + ": " + e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * One simulator connection with its read buffer and partial-line state.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final String url;
+        private final LineReader lines;
+        private final boolean connected;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        private boolean discarding; // skipping the rest of an overlong line
+
+        private Connection(SocketChannel channel, String url, boolean connected) {
+            this.channel = channel;
+            this.url = url;
+            this.connected = connected;
+            this.lines = new LineReader(url, storage, FLUSH_THRESHOLD, new RecordLineParser(false));
+        }
+
+        /**
+         * Reads what is available, parses the complete lines and keeps the
+         * partial last line for the next read.
+         */
+        private void read() throws IOException {
+            boolean eof = channel.read(buffer) < 0;
+            if (discarding && !skipDiscarded()) {
+                buffer.clear();
+                if (eof) {
+                    close();
+                }
+                return;
+            }
+            int limit = buffer.position();
+            int lineStart = lines.read(buffer, limit, eof);
+            if (!lines.getBatch().isEmpty()) {
+                lines.flush();
+            }
+            if (eof) {
+                System.out.println("Connection closed: " + url);
+                close();
+                return;
+            }
+
+            buffer.limit(limit).position(lineStart);
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                if (buffer.capacity() >= MAX_LINE_BYTES) {
+                    droppedLines.increment();
+                    System.err.println("Dropped a line longer than " + MAX_LINE_BYTES + " bytes from " + url);
+                    buffer.clear();
+                    discarding = true;
+                    return;
+                }
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(buffer.capacity() * 2, MAX_LINE_BYTES));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        /**
+         * Drops the read bytes up to and including the end of the overlong
+         * line, keeping what follows it.
+         *
+         * @return whether the end of the line was found
+         */
+        private boolean skipDiscarded() {
+            int limit = buffer.position();
+            int end = 0;
+            while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+                end++;
+            }
+            while (end < limit && (buffer.get(end) == '\n' || buffer.get(end) == '\r')) {
+                end++; // the terminator, and any blank lines after it
+            }
+            if (end == limit && (limit == 0 || (buffer.get(limit - 1) != '\n' && buffer.get(limit - 1) != '\r'))) {
+                return false;
+            }
+            discarding = false;
+            buffer.limit(limit).position(end);
+            buffer.compact();
+            return true;
+        }
+
+        private void close() {
+            if (!lines.getBatch().isEmpty()) {
+                lines.flush();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing connection to " + url + ": " + e.getMessage());
+            }
+        }
+    }
+}
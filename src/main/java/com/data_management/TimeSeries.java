@@ -0,0 +1,450 @@
+package com.data_management;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Time-ordered samples of one record type of one patient. The samples
+ * themselves live in a {@link SampleStore}, so a sample costs 16 bytes
+ * instead of a {@link PatientRecord} object and evicting the oldest samples
+ * is O(1). Which store is used is chosen by the {@link StorageBackend}.
+ * <p>
+ * Samples are always kept sorted by timestamp, so readers never need to sort.
+ * In-order samples are appended in O(1). Slightly late samples are collected
+ * in a small sorted reorder buffer, which is merged into the store in one
+ * pass when it fills up or before the next read. Range queries binary-search
+ * the window and only touch the samples inside it. The store grows until the
+ * {@link RetentionPolicy} limit is reached, after which the oldest samples
+ * are evicted.
+ * <p>
+ * Every accepted sample also updates one {@link Rollup} per
+ * {@link Resolution}, so aggregate queries over long ranges read a few
+ * buckets instead of the raw samples. Rollups are bounded by their own
+ * limit in the retention policy and outlive the raw samples it evicts.
+ * <p>
+ * The newest sample is also kept in two plain fields, so the current value
+ * of a vital is an O(1) read that survives eviction.
+ * <p>
+ * Each series is guarded by its own read-write lock, so writers for one
+ * patient and record type never block writers or readers of any other
+ * series. Mutators take the write lock themselves; callers that read through
+ * the index accessors must hold the read lock via {@link #lockRead()}.
+ */
+class TimeSeries {
+    private static final int REORDER_CAPACITY = 32;
+
+    private final int recordTypeId;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SampleStore store;
+    private final Rollup[] rollups;
+    private long[] pendingTimestamps; // reorder buffer for late samples, sorted, allocated on first use
+    private double[] pendingValues;
+    private int pendingCount;
+    private long latestTimestamp = Long.MIN_VALUE;
+    private double latestValue = Double.NaN;
+    private boolean hasLatest;
+    private long logPosition; // write-ahead log position of the newest logged sample, 0 if none
+    private volatile long insertedCount; // samples ever stored, written under the write lock
+
+    /**
+     * Constructs an empty series for the given record type.
+     *
+     * @param recordTypeId the {@link RecordTypes} id of the records in this series
+     * @param store        the empty store that will hold the samples
+     */
+    TimeSeries(int recordTypeId, SampleStore store) {
+        this.recordTypeId = recordTypeId;
+        this.store = store;
+        Resolution[] resolutions = Resolution.values();
+        this.rollups = new Rollup[resolutions.length];
+        for (Resolution resolution : resolutions) {
+            rollups[resolution.ordinal()] = new Rollup(resolution);
+        }
+    }
+
+    /**
+     * Adds a sample, keeping the series in timestamp order, and applies the
+     * per-series limits of the retention policy. Samples that arrive in order
+     * are appended; late samples go through the reorder buffer and end up
+     * after every sample with the same or an earlier timestamp. A late sample
+     * that would be evicted right away is dropped and counted as evicted.
+     *
+     * @param timestamp the time of the measurement in milliseconds since epoch
+     * @param value     the measured value
+     * @param policy    the retention policy to enforce
+     * @param stats     the counters to record evictions in
+     * @return the change in the number of stored samples
+     */
+    int add(long timestamp, double value, RetentionPolicy policy, RetentionStats stats) {
+        return add(timestamp, value, policy, stats, null, 0);
+    }
+
+    /**
+     * Adds a sample like {@link #add(long, double, RetentionPolicy, RetentionStats)}
+     * and logs it to the write-ahead log under the same write lock, so a
+     * snapshot of the series holds exactly the logged samples up to
+     * {@link #getLogPosition()}.
+     *
+     * @param wal       the log to append to, or null to not log the sample
+     * @param patientId the patient the series belongs to
+     */
+    int add(long timestamp, double value, RetentionPolicy policy, RetentionStats stats,
+            WriteAheadLog wal, int patientId) {
+        lock.writeLock().lock();
+        try {
+            if (wal != null) {
+                logPosition = wal.append(patientId, recordTypeId, timestamp, value);
+            }
+            return insert(timestamp, value, policy, stats);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a sample replayed from the write-ahead log unless the series
+     * already holds everything up to its log position, i.e. the sample came
+     * with a snapshot or was evicted before the snapshot was taken.
+     *
+     * @param position the log position of the sample
+     * @return the change in the number of stored samples
+     */
+    int replay(long position, long timestamp, double value, RetentionPolicy policy, RetentionStats stats) {
+        lock.writeLock().lock();
+        try {
+            if (position <= logPosition) {
+                return 0;
+            }
+            logPosition = position;
+            return insert(timestamp, value, policy, stats);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns how many samples were ever stored in this series, including
+     * ones evicted since. Samples dropped on arrival are not counted.
+     */
+    long insertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * Returns the log position of the newest logged sample. Callers hold the
+     * read lock.
+     */
+    long getLogPosition() {
+        return logPosition;
+    }
+
+    /**
+     * Sets the log position restored from a snapshot.
+     */
+    void setLogPosition(long position) {
+        lock.writeLock().lock();
+        try {
+            logPosition = position;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a sample and applies the retention policy. Must hold the write
+     * lock.
+     */
+    private int insert(long timestamp, double value, RetentionPolicy policy, RetentionStats stats) {
+        int before = store.size() + pendingCount;
+        int limit = policy.getMaxSamplesPerSeries();
+        // pending samples are always older than the newest stored one
+        boolean late = store.size() > 0 && timestamp < store.timestampAt(store.size() - 1);
+        if (late) {
+            if (policy.hasAgeLimit() && timestamp < store.timestampAt(store.size() - 1) - policy.getMaxAgeMillis()) {
+                stats.recordAgeEvictions(1);
+                return 0;
+            }
+            if (before >= limit && timestamp < oldestTimestamp()) {
+                stats.recordSeriesLimitEvictions(1);
+                return 0;
+            }
+        }
+        if (!late && policy.hasAgeLimit()) {
+            int expired = store.lowerBound(timestamp - policy.getMaxAgeMillis());
+            if (expired > 0 || (pendingCount > 0 && pendingTimestamps[0] < timestamp - policy.getMaxAgeMillis())) {
+                flushPending();
+                stats.recordAgeEvictions(store.removeFirst(store.lowerBound(timestamp - policy.getMaxAgeMillis())));
+            }
+        }
+        if (store.size() + pendingCount >= limit) {
+            flushPending();
+            stats.recordSeriesLimitEvictions(store.removeFirst(store.size() - limit + 1));
+        }
+
+        if (late) {
+            addPending(timestamp, value);
+        } else {
+            store.append(timestamp, value);
+        }
+        insertedCount++;
+        for (Rollup rollup : rollups) {
+            rollup.add(timestamp, value, policy);
+        }
+        if (timestamp >= latestTimestamp) {
+            latestTimestamp = timestamp;
+            latestValue = value;
+            hasLatest = true;
+        }
+        return store.size() + pendingCount - before;
+    }
+
+    /**
+     * Inserts a late sample into the sorted reorder buffer, merging the buffer
+     * into the store first if it is full. Must hold the write lock.
+     */
+    private void addPending(long timestamp, double value) {
+        if (pendingTimestamps == null) {
+            pendingTimestamps = new long[REORDER_CAPACITY];
+            pendingValues = new double[REORDER_CAPACITY];
+        } else if (pendingCount == REORDER_CAPACITY) {
+            flushPending();
+        }
+        int index = pendingCount;
+        while (index > 0 && pendingTimestamps[index - 1] > timestamp) {
+            pendingTimestamps[index] = pendingTimestamps[index - 1];
+            pendingValues[index] = pendingValues[index - 1];
+            index--;
+        }
+        pendingTimestamps[index] = timestamp;
+        pendingValues[index] = value;
+        pendingCount++;
+    }
+
+    /**
+     * Merges the reorder buffer into the store. Must hold the write lock.
+     */
+    private void flushPending() {
+        if (pendingCount > 0) {
+            store.mergeSorted(pendingTimestamps, pendingValues, pendingCount);
+            pendingCount = 0;
+        }
+    }
+
+    private long oldestTimestamp() {
+        long oldest = store.size() > 0 ? store.timestampAt(0) : Long.MAX_VALUE;
+        return pendingCount > 0 ? Math.min(oldest, pendingTimestamps[0]) : oldest;
+    }
+
+    /**
+     * Passes every sample in {@code [startTime, endTime]} to the consumer,
+     * oldest first, while holding the read lock.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @param consumer  receives the samples
+     * @return the number of samples visited
+     */
+    int forEach(long startTime, long endTime, SampleConsumer consumer) {
+        lockRead();
+        try {
+            int from = store.lowerBound(startTime);
+            int to = store.upperBound(endTime);
+            store.forEach(from, to, consumer);
+            return Math.max(0, to - from);
+        } finally {
+            unlockRead();
+        }
+    }
+
+    /**
+     * Returns the newest sample ever added to this series, or null if the
+     * series never had a sample.
+     */
+    LatestValue latest() {
+        lock.readLock().lock();
+        try {
+            return hasLatest ? new LatestValue(RecordTypes.labelOf(recordTypeId), latestTimestamp, latestValue) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the value of the newest stored sample at or before the given
+     * time, found by binary search.
+     *
+     * @param timestamp    the time to look up
+     * @param defaultValue the value to return if there is no such sample
+     * @return the value, or {@code defaultValue}
+     */
+    double valueAtOrBefore(long timestamp, double defaultValue) {
+        lockRead();
+        try {
+            int index = store.upperBound(timestamp) - 1;
+            return index >= 0 ? store.valueAt(index) : defaultValue;
+        } finally {
+            unlockRead();
+        }
+    }
+
+    /**
+     * Appends the rollup buckets of the given resolution that overlap the
+     * time range to the result list.
+     *
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @param resolution the bucket width to read
+     * @param result     the list to append the buckets to
+     */
+    void collectAggregates(long startTime, long endTime, Resolution resolution, List<Aggregate> result) {
+        lock.readLock().lock();
+        try {
+            rollups[resolution.ordinal()].collect(startTime, endTime, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evicts samples and rollup buckets until the series satisfies the
+     * per-series limits of the given policy. Used when the policy of an
+     * existing series changes.
+     *
+     * @param policy the retention policy to enforce
+     * @param stats  the counters to record evictions in
+     * @return the number of evicted samples
+     */
+    int trim(RetentionPolicy policy, RetentionStats stats) {
+        lock.writeLock().lock();
+        try {
+            flushPending();
+            int evicted = 0;
+            if (store.size() > policy.getMaxSamplesPerSeries()) {
+                int removed = store.removeFirst(store.size() - policy.getMaxSamplesPerSeries());
+                stats.recordSeriesLimitEvictions(removed);
+                evicted += removed;
+            }
+            if (policy.hasAgeLimit() && store.size() > 0) {
+                long newest = store.timestampAt(store.size() - 1);
+                int removed = store.removeFirst(store.lowerBound(newest - policy.getMaxAgeMillis()));
+                stats.recordAgeEvictions(removed);
+                evicted += removed;
+            }
+            for (Rollup rollup : rollups) {
+                rollup.trim(policy);
+            }
+            return evicted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Evicts, in one run, the oldest samples with a timestamp before the
+     * given time, at least one and at most {@code max}.
+     *
+     * @param timestamp the time before which samples are evicted
+     * @param max       the largest number of samples to evict
+     * @return the number of samples actually evicted
+     */
+    int removeBefore(long timestamp, int max) {
+        lock.writeLock().lock();
+        try {
+            flushPending();
+            return store.removeFirst(Math.min(Math.max(1, store.lowerBound(timestamp)), max));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the timestamp of the oldest sample, or {@code Long.MAX_VALUE} if
+     * the series is empty.
+     */
+    long firstTimestamp() {
+        lock.readLock().lock();
+        try {
+            return oldestTimestamp();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of samples, taking the read lock.
+     */
+    int sampleCount() {
+        lock.readLock().lock();
+        try {
+            return store.size() + pendingCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Acquires the read lock of this series, merging pending late samples
+     * first so that the index accessors see every sample in order. Must be
+     * paired with {@link #unlockRead()} in a finally block.
+     */
+    void lockRead() {
+        lock.readLock().lock();
+        if (pendingCount > 0) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                flushPending();
+                lock.readLock().lock(); // downgrade, so no writer can slip in
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Releases the read lock acquired by {@link #lockRead()}.
+     */
+    void unlockRead() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or
+     * equal to the given time, or {@code size} if there is none.
+     */
+    int lowerBound(long timestamp) {
+        return store.lowerBound(timestamp);
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater
+     * than the given time, or {@code size} if there is none.
+     */
+    int upperBound(long timestamp) {
+        return store.upperBound(timestamp);
+    }
+
+    int getRecordTypeId() {
+        return recordTypeId;
+    }
+
+    int size() {
+        return store.size();
+    }
+
+    long timestampAt(int index) {
+        return store.timestampAt(index);
+    }
+
+    double valueAt(int index) {
+        return store.valueAt(index);
+    }
+
+    /**
+     * Copies a block of samples, see {@link SampleStore#read}.
+     */
+    int read(int from, int to, long[] timestamps, double[] values) {
+        return store.read(from, to, timestamps, values);
+    }
+}
@@ -0,0 +1,48 @@
+package com.data_management;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The current vitals of one patient: the most recent value of every record
+ * type the patient has data for. Returned in bulk by
+ * {@link DataStorage#getLatestVitals()}.
+ */
+public class VitalsSnapshot {
+    private final int patientId;
+    private final Map<String, LatestValue> latestByType;
+
+    /**
+     * Constructs a snapshot.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param latestByType the latest value per record type label
+     */
+    public VitalsSnapshot(int patientId, Map<String, LatestValue> latestByType) {
+        this.patientId = patientId;
+        this.latestByType = Collections.unmodifiableMap(latestByType);
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Returns the latest value of one record type.
+     *
+     * @param recordType the type of record, e.g. "ECG"
+     * @return the latest value, or null if the patient has no such records
+     */
+    public LatestValue getLatest(String recordType) {
+        return latestByType.get(recordType);
+    }
+
+    /**
+     * Returns the latest value of every record type, keyed by label.
+     *
+     * @return a read-only map of the latest values
+     */
+    public Map<String, LatestValue> getAll() {
+        return latestByType;
+    }
+}
@@ -3,16 +3,57 @@ package com.data_management;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A RealTimeDataReader implementation that connects to a WebSocket server
  * and processes real-time incoming data.
+ * <p>
+ * Messages are parsed on the socket thread and handed to an
+ * {@link IngestionPipeline}, whose writer thread applies them to the storage
+ * in batches, so a slow storage does not hold up the socket.
+ * <p>
+ * Connecting with {@code ?framing=binary} in the URI asks the server for
+ * binary frames, each carrying many records as one {@link BinaryRecordFormat}
+ * block. Text frames are handled either way; a text frame starting with
+ * {@code {} or {@code [} is decoded as JSON by a {@link JsonRecordCodec},
+ * anything else as a "patientId,timestamp,label,value" line by a CSV
+ * {@link RecordLineParser}, so lines are accepted and rejected exactly as by
+ * {@link TcpDataReader}.
  */
 public class WebSocketDataReader implements RealTimeDataReader {
+    private static final int DEFAULT_QUEUE_CAPACITY = 65536;
 
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final RecordBatch received = new RecordBatch(1);
+    private final JsonRecordCodec json = new JsonRecordCodec(); // used on the socket thread only
+    private final RecordLineParser csv = new RecordLineParser(false); // likewise
     private WebSocketClient client;
+    private IngestionPipeline pipeline;
+
+    /**
+     * Constructs a reader with a queue of {@value #DEFAULT_QUEUE_CAPACITY}
+     * records that blocks the socket when full.
+     */
+    public WebSocketDataReader() {
+        this(DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Constructs a reader with the given queue size and overflow policy.
+     *
+     * @param queueCapacity  the maximum number of records waiting for the storage
+     * @param overflowPolicy what to do with records that arrive while the queue is full
+     */
+    public WebSocketDataReader(int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
 
     /**
      * Constructs a new WebSocketDataReader and connects to a WebSocket server.
@@ -20,8 +61,11 @@ public class WebSocketDataReader implements RealTimeDataReader {
      * @param uri the WebSocket URI to connect to
      */
     @Override
-    public void connectToWebSocket(String uri) {
+    public void connect(String uri) {
         try {
+            if (pipeline == null) {
+                pipeline = new IngestionPipeline(DataStorage.getInstance(), queueCapacity, overflowPolicy);
+            }
             client = new WebSocketClient(new URI(uri)) {
                 @Override
                 public void onOpen(ServerHandshake handshakedata) {
@@ -30,7 +74,18 @@ public class WebSocketDataReader implements RealTimeDataReader {
 
                 @Override
                 public void onMessage(String message) {
-                    parseAndStoreMessage(message);
+                    received.clear();
+                    if (parse(message, received, json, csv)) {
+                        pipeline.offer(received);
+                    }
+                }
+
+                @Override
+                public void onMessage(ByteBuffer bytes) {
+                    received.clear();
+                    if (decode(bytes, received)) {
+                        pipeline.offer(received);
+                    }
                 }
 
                 @Override
@@ -51,44 +106,108 @@ public class WebSocketDataReader implements RealTimeDataReader {
     }
 
     /**
-     * Gracefully disconnects from the WebSocket server.
+     * Gracefully disconnects from the WebSocket server and waits until the
+     * records received so far are in the storage.
      */
     @Override
     public void disconnect() {
         if (client != null && client.isOpen()) {
-            client.close();
+            try {
+                client.closeBlocking();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
         }
     }
 
     /**
-     * Parses and stores a message received from the WebSocket.
+     * Returns the pipeline between the socket and the storage, for reading
+     * its queue depth and drop counters, or {@code null} before connecting.
+     *
+     * @return the ingestion pipeline
+     */
+    public IngestionPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Parses and stores a message received from the WebSocket, bypassing the
+     * queue so the record is in the storage when this returns.
      * This is public for testing purposes.
      *
      * @param message the raw message string
      */
     public void parseAndStoreMessage(String message) {
-        try {
-            String[] parts = message.split(",");
-
-            if (parts.length != 4) {
-                System.err.println("Invalid message format: " + message);
-                return;
-            }
+        RecordBatch batch = new RecordBatch(1);
+        if (parse(message, batch, new JsonRecordCodec(), new RecordLineParser(false))) {
+            DataStorage.getInstance().addPatientData(batch);
+        }
+    }
 
-            int patientId = Integer.parseInt(parts[0].trim());
-            long timestamp = Long.parseLong(parts[1].trim());
-            String recordType = parts[2].trim();
-            double measurementValue = Double.parseDouble(parts[3].trim().replace("%", ""));
+    /**
+     * Decodes and stores a binary frame received from the WebSocket, bypassing
+     * the queue so the records are in the storage when this returns.
+     * This is public for testing purposes.
+     *
+     * @param frame the frame holding one record block
+     */
+    public void parseAndStoreFrame(ByteBuffer frame) {
+        RecordBatch batch = new RecordBatch();
+        if (decode(frame, batch)) {
+            DataStorage.getInstance().addPatientData(batch);
+        }
+    }
 
-            DataStorage.getInstance().addPatientData(patientId, measurementValue, recordType, timestamp);
+    /**
+     * Decodes a binary frame into the batch.
+     *
+     * @return whether the frame was valid
+     */
+    private static boolean decode(ByteBuffer frame, RecordBatch batch) {
+        try {
+            BinaryRecordFormat.decodeBlock(frame, batch, Long.MIN_VALUE, Long.MAX_VALUE);
+            return true;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            System.err.println("Invalid binary frame of " + frame.remaining() + " bytes");
+            batch.clear();
+            return false;
+        }
+    }
 
-            System.out.printf("[WS] Stored: patientId=%d, %s=%.2f at %d%n",
-                    patientId, recordType, measurementValue, timestamp);
+    /**
+     * Parses a JSON or "patientId,timestamp,label,value" message into the
+     * batch.
+     *
+     * @return whether the message was valid
+     */
+    private static boolean parse(String message, RecordBatch batch, JsonRecordCodec json, RecordLineParser csv) {
+        if (isJson(message)) {
+            if (!json.decode(message, batch)) {
+                System.err.println("Invalid JSON message: " + message);
+                return false;
+            }
+            return true;
+        }
+        ByteBuffer line = ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+        if (!csv.decode(line, 0, line.limit(), batch)) {
+            System.err.println("Invalid message format: " + message);
+            return false;
+        }
+        return true;
+    }
 
-        } catch (Exception e) {
-            System.err.println("Failed to parse message: " + message);
-            e.printStackTrace();
+    private static boolean isJson(String message) {
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c > ' ') {
+                return c == '{' || c == '[';
+            }
         }
+        return false;
     }
 
     public void simulateOnMessage(String message) {
@@ -0,0 +1,457 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable binary log of every sample added to {@link DataStorage}, so that
+ * data received over the network survives a crash or restart.
+ * <p>
+ * Appends go to an in-memory buffer. A background thread commits the buffer
+ * every few milliseconds as one CRC-protected batch with a single
+ * {@code force}, so many appends share one disk sync (group commit). With
+ * synchronous commits enabled, {@link #append} additionally waits until its
+ * batch is on disk.
+ * <p>
+ * The log is split into numbered segments ({@code wal-<n>.log}).
+ * {@link DataStorage#checkpoint()} starts a new segment, writes a
+ * {@link StorageSnapshot}, and deletes the segments the snapshot covers.
+ * Record type ids are only valid within one process, so each segment
+ * defines the labels it uses before their first sample.
+ * <p>
+ * Every sample has a log position: its segment number and its index within
+ * the segment, packed into one increasing {@code long}. Series remember the
+ * position of their newest logged sample and snapshots save it, so replay
+ * applies exactly the samples logged after the snapshot.
+ * <p>
+ * A failed write is cut off the segment again and fails the log for good:
+ * every later append, commit or rotation throws, so no sample is accepted
+ * that could not be made durable, and no good batch ever follows torn bytes.
+ */
+public class WriteAheadLog implements Closeable {
+    static final String SEGMENT_PREFIX = "wal-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int BATCH_MAGIC = 0x57414C42; // "WALB"
+    private static final int BATCH_HEADER_BYTES = 12;  // magic, length, crc
+    private static final byte LABEL = 'L';
+    private static final byte SAMPLE = 'S';
+    private static final int SAMPLE_BYTES = 1 + 4 + 4 + 8 + 8;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int INDEX_BITS = 40;
+
+    private final Path directory;
+    private final boolean syncCommit;
+    private final Object commitLock = new Object(); // serializes writes to the channel
+    private final ReentrantLock lock = new ReentrantLock(); // guards the buffers and counters
+    private final Condition committed = lock.newCondition();
+    private final Thread committer;
+
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_BYTES);
+    private FileChannel channel;
+    private long segment;
+    private boolean[] labelWritten = new boolean[16];
+    private long appended;
+    private long segmentSamples;
+    private long durable;
+    private volatile boolean closed;
+    private volatile IOException failure; // the write that failed the log, null while healthy
+
+    /**
+     * Opens a write-ahead log in the given directory. Appends go to a new
+     * segment numbered after the newest existing one.
+     *
+     * @param directory            the directory holding segments and snapshots
+     * @param commitIntervalMillis how often buffered appends are committed
+     * @param syncCommit           whether {@link #append} waits for its commit
+     * @throws IOException if the directory or segment cannot be created
+     */
+    public WriteAheadLog(Path directory, long commitIntervalMillis, boolean syncCommit) throws IOException {
+        this.directory = directory;
+        this.syncCommit = syncCommit;
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory);
+        this.segment = existing.isEmpty() ? 1 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+        this.channel = openSegment(segment);
+
+        this.committer = new Thread(() -> {
+            while (!closed) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(commitIntervalMillis);
+                    commit();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Error committing write-ahead log, no longer accepting samples: "
+                            + e.getMessage());
+                    return;
+                }
+            }
+        }, "wal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Appends one sample to the log.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the record type id from {@link RecordTypes}
+     * @param timestamp    the time of the sample in milliseconds since epoch
+     * @param value        the measured value
+     * @return the log position of the sample
+     * @throws IllegalStateException if the log is closed or a write failed
+     */
+    public long append(int patientId, int recordTypeId, long timestamp, double value) {
+        long sequence;
+        long position;
+        while (true) {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Write-ahead log is closed");
+                }
+                checkHealthy();
+                byte[] label = labelIfUnwritten(recordTypeId);
+                int needed = SAMPLE_BYTES + (label == null ? 0 : 1 + 4 + 2 + label.length);
+                if (active.remaining() >= needed) {
+                    if (label != null) {
+                        active.put(LABEL).putInt(recordTypeId).putShort((short) label.length).put(label);
+                        labelWritten[recordTypeId] = true;
+                    }
+                    active.put(SAMPLE).putInt(patientId).putInt(recordTypeId).putLong(timestamp).putDouble(value);
+                    sequence = ++appended;
+                    position = position(segment, ++segmentSamples);
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            commitQuietly(); // buffer is full, make room and retry
+        }
+        if (syncCommit) {
+            awaitCommit(sequence);
+        }
+        return position;
+    }
+
+    /**
+     * Packs a segment number and the 1-based index of a sample within that
+     * segment into a log position. Positions order like the log itself.
+     */
+    static long position(long segment, long index) {
+        return segment << INDEX_BITS | index;
+    }
+
+    /**
+     * Commits everything appended so far and forces it to disk.
+     *
+     * @throws IOException if the segment cannot be written
+     */
+    public void sync() throws IOException {
+        commit();
+    }
+
+    /**
+     * Commits the current segment and continues in a new one.
+     *
+     * @return the number of the new segment; every older segment is complete
+     * @throws IOException if a segment cannot be written or created
+     */
+    public long rotate() throws IOException {
+        synchronized (commitLock) {
+            lock.lock(); // appenders wait, so no sample can end up in the wrong segment
+            try {
+                if (failure != null) {
+                    throw new IOException("Write-ahead log failed", failure);
+                }
+                writeBatch(active);
+                durable = appended;
+                committed.signalAll();
+                channel.close();
+                segment++;
+                segmentSamples = 0;
+                channel = openSegment(segment);
+                Arrays.fill(labelWritten, false);
+                return segment;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the directory holding the segments.
+     *
+     * @return the log directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Commits pending appends and closes the log.
+     *
+     * @throws IOException if the final commit fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        committer.interrupt();
+        synchronized (commitLock) {
+            lock.lock();
+            try {
+                closed = true;
+                committed.signalAll();
+                if (failure == null) {
+                    writeBatch(active);
+                    durable = appended;
+                }
+            } finally {
+                try {
+                    channel.close();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the segments in the directory, oldest first.
+     *
+     * @param directory the log directory
+     * @return the segment files
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the number of a segment file.
+     *
+     * @param segment the segment file
+     * @return its number
+     */
+    public static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Replays one segment into the storage. Replay is idempotent: a sample is
+     * skipped if its series was restored up to a later log position, so a
+     * segment that overlaps a snapshot can be replayed safely. Replay stops
+     * at the first torn or corrupt batch, which can only be the unfinished
+     * tail of the log: a failed write is truncated away and ends the log.
+     *
+     * @param segment the segment file
+     * @param storage the storage to restore into
+     * @return the number of samples replayed
+     * @throws IOException if the segment cannot be read
+     */
+    public static long replay(Path segment, DataStorage storage) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int[] typeIds = new int[16]; // segment-local id -> RecordTypes id
+        Arrays.fill(typeIds, -1);
+        long number = segmentNumber(segment);
+        long index = 0;
+        long replayed = 0;
+        CRC32 crc = new CRC32();
+        while (data.remaining() >= BATCH_HEADER_BYTES) {
+            int magic = data.getInt();
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (magic != BATCH_MAGIC || length < 0 || length > data.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.array(), data.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            int end = data.position() + length;
+            while (data.position() < end) {
+                byte kind = data.get();
+                if (kind == LABEL) {
+                    int id = data.getInt();
+                    byte[] label = new byte[data.getShort()];
+                    data.get(label);
+                    if (id >= typeIds.length) {
+                        int oldLength = typeIds.length;
+                        typeIds = Arrays.copyOf(typeIds, Math.max(id + 1, oldLength * 2));
+                        Arrays.fill(typeIds, oldLength, typeIds.length, -1);
+                    }
+                    typeIds[id] = RecordTypes.idOf(new String(label, StandardCharsets.UTF_8));
+                } else if (kind == SAMPLE) {
+                    int patientId = data.getInt();
+                    int id = data.getInt();
+                    long timestamp = data.getLong();
+                    double value = data.getDouble();
+                    long position = position(number, ++index);
+                    if (id < typeIds.length && typeIds[id] >= 0) {
+                        storage.restorePatientData(patientId, value, typeIds[id], timestamp, position);
+                        replayed++;
+                    }
+                } else {
+                    throw new IOException("Corrupt record in " + segment);
+                }
+            }
+        }
+        return replayed;
+    }
+
+    private byte[] labelIfUnwritten(int recordTypeId) {
+        if (recordTypeId >= labelWritten.length) {
+            labelWritten = Arrays.copyOf(labelWritten, Math.max(recordTypeId + 1, labelWritten.length * 2));
+        }
+        return labelWritten[recordTypeId] ? null : RecordTypes.labelOf(recordTypeId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void commit() throws IOException {
+        synchronized (commitLock) {
+            ByteBuffer batch;
+            long upTo;
+            lock.lock();
+            try {
+                if (closed || active.position() == 0) {
+                    return;
+                }
+                if (failure != null) {
+                    throw new IOException("Write-ahead log failed", failure);
+                }
+                batch = active;
+                active = spare;
+                upTo = appended;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean written = false;
+            try {
+                writeBatch(batch); // appenders keep filling the other buffer meanwhile
+                written = true;
+            } finally {
+                lock.lock();
+                try {
+                    batch.clear();
+                    spare = batch; // the buffers must never be the same, even after a failure
+                    if (written) {
+                        durable = upTo;
+                    }
+                    committed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Throws if an earlier write failed. Caller holds the lock.
+     */
+    private void checkHealthy() {
+        if (failure != null) {
+            throw new IllegalStateException("Write-ahead log failed", failure);
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error committing write-ahead log", e);
+        }
+    }
+
+    /**
+     * Writes the buffer as one batch, forces it to disk and clears the buffer.
+     * If that fails, the segment is truncated back to where the batch began
+     * and the log is failed. Caller holds the commit lock.
+     */
+    private void writeBatch(ByteBuffer batch) throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        CRC32 crc = new CRC32();
+        crc.update(batch.array(), 0, batch.limit());
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_BYTES);
+        header.putInt(BATCH_MAGIC).putInt(batch.limit()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] frame = {header, batch};
+        long start = channel.size();
+        try {
+            while (header.hasRemaining() || batch.hasRemaining()) {
+                write(channel, frame);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            try {
+                channel.truncate(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        batch.clear();
+    }
+
+    /**
+     * Writes part of a batch frame to the segment. Overridable for testing
+     * purposes, so that tests can inject write failures.
+     *
+     * @param channel the segment being written
+     * @param frame   the batch header and body
+     * @throws IOException if the write fails
+     */
+    protected void write(FileChannel channel, ByteBuffer[] frame) throws IOException {
+        channel.write(frame);
+    }
+
+    private void awaitCommit(long sequence) {
+        lock.lock();
+        try {
+            while (durable < sequence && !closed) {
+                checkHealthy();
+                committed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -4,6 +4,7 @@ import com.data_management.*;
 import com.alerts.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -84,6 +85,33 @@ class AlertGeneratorTest {
         assertTrue(conditions.stream().anyMatch(c -> c.contains("Rapid Oxygen Drop")));
     }
 
+    @Test
+    void testRepeatedEvaluationRaisesNoFalseOxygenDrop() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> { });
+        Patient patient = new Patient(4);
+        patient.addRecord(91.0, "OxygenSaturation", 0L);
+        patient.addRecord(97.0, "OxygenSaturation", 1_200_000L);
+        patient.addRecord(97.0, "OxygenSaturation", 1_260_000L);
+
+        AlertGenerator generator = new AlertGenerator(storage);
+        generator.evaluateData(patient);
+        generator.evaluateData(patient);
+
+        assertTrue(generator.getTriggeredAlerts().stream()
+                .noneMatch(a -> a.getCondition().contains("Rapid Oxygen Drop")));
+    }
+
+    @Test
+    void testLateOxygenReadingIsNotComparedWithNewerOnes() {
+        AlertGenerator generator = new AlertGenerator(DataStorage.forceNewInstance(ds -> { }));
+        Patient patient = new Patient(4);
+        generator.onSample(patient, RecordTypes.OXYGEN_SATURATION, 600_000L, 97.0);
+        generator.onSample(patient, RecordTypes.OXYGEN_SATURATION, 300_000L, 93.0); // late
+        generator.onSample(patient, RecordTypes.OXYGEN_SATURATION, 660_000L, 97.0);
+
+        assertTrue(generator.getTriggeredAlerts().isEmpty());
+    }
+
     @Test
     void testSystolicTrendAlertTriggered() {
         BatchDataReader dummyReader = ds -> {};
@@ -163,6 +191,119 @@ class AlertGeneratorTest {
         assertTrue(conditions.stream().anyMatch(c -> c.contains("Manual Alert Triggered")));
     }
 
+    @Test
+    void testIncrementalEvaluationSeesEachRecordOnce() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.reset();
+
+        Patient patient = new Patient(7);
+        long now = System.currentTimeMillis();
+        patient.addRecord(130.0, "DiastolicPressure", now);
+        patient.addRecord(85.0, "OxygenSaturation", now);
+        storage.addPatient(7, patient);
+
+        AlertGenerator generator = new AlertGenerator(storage);
+        generator.evaluateNewData(patient);
+        assertEquals(2, generator.getTriggeredAlerts().size());
+
+        generator.evaluateNewData(patient); // nothing new
+        assertEquals(2, generator.getTriggeredAlerts().size());
+
+        // same timestamp as the watermark, read back before the saturation record
+        patient.addRecord(131.0, "DiastolicPressure", now);
+        patient.addRecord(125.0, "DiastolicPressure", now + 1);
+        generator.evaluateNewData(patient);
+        List<String> conditions = generator.getTriggeredAlerts().stream()
+                                           .map(Alert::getCondition)
+                                           .collect(Collectors.toList());
+        assertEquals(4, conditions.size());
+        assertTrue(conditions.get(2).contains("131.0"));
+        assertTrue(conditions.get(3).contains("125.0"));
+        assertEquals(0, generator.getSkippedRecordCount());
+    }
+
+    @Test
+    void testPullCountsRecordsBelowTheWatermark() {
+        DataStorage storage = DataStorage.forceNewInstance(testReader);
+        AlertGenerator generator = new AlertGenerator(storage);
+        storage.addPatientData(11, 120.0, "SystolicPressure", 1000L);
+        storage.addPatientData(11, 95.0, "Saturation", 2000L);
+        generator.evaluateNewData(storage.getPatient(11));
+
+        storage.addPatientData(11, 85.0, "Saturation", 1500L); // arrives after the pull that passed it
+        storage.addPatientData(11, 96.0, "Saturation", 3000L);
+        generator.evaluateNewData(storage.getPatient(11));
+
+        assertEquals(1, generator.getSkippedRecordCount());
+        assertTrue(generator.getTriggeredAlerts().isEmpty());
+    }
+
+    @Test
+    void testPushedSamplesAreEvaluatedAsTheyAreStored() {
+        DataStorage storage = DataStorage.forceNewInstance(testReader);
+        AlertGenerator generator = new AlertGenerator(storage);
+        storage.addSampleListener(generator);
+
+        long now = System.currentTimeMillis();
+        storage.addPatientData(8, 100.0, "SystolicPressure", now);
+        storage.addPatientData(8, 111.0, "SystolicPressure", now + 1);
+        assertTrue(generator.getTriggeredAlerts().isEmpty());
+
+        RecordBatch batch = new RecordBatch();
+        batch.add(8, 123.0, RecordTypes.SYSTOLIC_PRESSURE, now + 2);
+        storage.addPatientData(batch);
+        assertEquals(1, generator.getTriggeredAlerts().size());
+        assertTrue(generator.getTriggeredAlerts().get(0).getCondition().contains("Systolic Trend"));
+
+        // a pushed generator does not pull as well
+        assertThrows(IllegalStateException.class, () -> generator.evaluateNewData(storage.getPatient(8)));
+        assertEquals(1, generator.getTriggeredAlerts().size());
+
+        storage.removeSampleListener(generator);
+        storage.addPatientData(8, 200.0, "SystolicPressure", now + 3);
+        assertEquals(1, generator.getTriggeredAlerts().size());
+    }
+
+    @Test
+    void testPullingGeneratorRejectsPushedSamples() {
+        DataStorage storage = DataStorage.forceNewInstance(testReader);
+        AlertGenerator generator = new AlertGenerator(storage);
+        storage.addPatientData(12, 1.0, "Alert", 1000L);
+        generator.evaluateNewData(storage.getPatient(12));
+        assertEquals(1, generator.getTriggeredAlerts().size());
+
+        // the push is rejected and counted, the next pull evaluates the record once
+        storage.addSampleListener(generator);
+        storage.addPatientData(12, 1.0, "Alert", 2000L);
+        assertEquals(1, storage.getListenerFailureCount());
+        assertEquals(1, generator.getTriggeredAlerts().size());
+
+        generator.evaluateNewData(storage.getPatient(12));
+        assertEquals(2, generator.getTriggeredAlerts().size());
+        assertEquals(0, generator.getSkippedRecordCount());
+    }
+
+    @Test
+    void testCorrelationRulesRespectTheirWindow() {
+        CorrelationRule rule = new CorrelationRule("Tachycardic Hypoxemia",
+                RecordTypes.ECG, value -> value > 150,
+                RecordTypes.OXYGEN_SATURATION, value -> value < 90, 60_000);
+        AlertRules rules = AlertRules.defaults().withCorrelationRules(List.of(rule));
+        CorrelationEngine engine = new CorrelationEngine();
+        List<Alert> alerts = new ArrayList<>();
+
+        engine.evaluate(rules, 9, RecordTypes.ECG, 0, 160, alerts);
+        engine.evaluate(rules, 9, RecordTypes.OXYGEN_SATURATION, 30_000, 88, alerts);
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).getCondition().contains("Tachycardic Hypoxemia"));
+
+        engine.evaluate(rules, 9, RecordTypes.ECG, 200_000, 170, alerts); // oxygen reading is too old
+        engine.evaluate(rules, 10, RecordTypes.OXYGEN_SATURATION, 200_000, 85, alerts); // other patient
+        engine.evaluate(rules, 9, RecordTypes.OXYGEN_SATURATION, 210_000, 95, alerts); // condition not met
+        engine.evaluate(rules, 9, RecordTypes.ECG, 220_000, 155, alerts); // latest oxygen is fine now
+        assertEquals(1, alerts.size());
+    }
+
      @Test
     void testPriorityDecoratorAddsTag() {
         Alert base = new Alert("123", "Low Oxygen Saturation", 1000L);
@@ -0,0 +1,102 @@
+package alerts;
+
+import com.alerts.*;
+import com.data_management.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlertRulesTest {
+
+    @Test
+    void testParseKeepsDefaultsForMissingEntries() {
+        AlertRules rules = AlertRules.parse("{\"bloodPressure\": {\"systolic\": {\"above\": 160}}}");
+
+        assertTrue(rules.isCritical(RecordTypes.SYSTOLIC_PRESSURE, 170));
+        assertTrue(rules.isCritical(RecordTypes.SYSTOLIC_PRESSURE, 85));
+        assertFalse(rules.isCritical(RecordTypes.DIASTOLIC_PRESSURE, 115));
+        assertTrue(rules.isCritical(RecordTypes.OXYGEN_SATURATION, 91));
+        assertFalse(rules.isCritical(RecordTypes.ECG, 1000));
+        assertEquals(1.5, rules.getEcgSpikeFactor());
+        assertEquals(1, rules.getCorrelationRules().size());
+    }
+
+    @Test
+    void testParseRejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> AlertRules.parse("{\"ecg\": {\"spikeFactr\": 2}}"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRules.parse("{\"ecg\": {\"windowSamples\": 0}}"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRules.parse("{\"ecg\": {\"spikeFactor\": \"x\"}}"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRules.parse("not json"));
+        assertThrows(IllegalArgumentException.class,
+                () -> AlertRules.parse("{\"bloodPressure\": {\"trendSamples\": 2.5}}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> AlertRules.parse("{\"oxygenSaturation\": {\"dropWindowMillis\": 1e30}}"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRules.parse("{\"correlations\": [{\"condition\": \"c\", "
+                + "\"first\": {\"type\": \"SystolicPresure\", \"below\": 90}, "
+                + "\"second\": {\"type\": \"OxygenSaturation\", \"below\": 92}, \"windowMillis\": 1000}]}"));
+    }
+
+    @Test
+    void testParsedCorrelationRuleFires() {
+        AlertRules rules = AlertRules.parse("{\"correlations\": [{\"condition\": \"Tachycardic Hypertension\","
+                + " \"first\": {\"type\": \"SystolicPressure\", \"above\": 140},"
+                + " \"second\": {\"type\": \"ECG\", \"above\": 2, \"below\": 5}, \"windowMillis\": 1000}]}");
+        List<Alert> alerts = new ArrayList<>();
+        AlertGenerator generator = new AlertGenerator(DataStorage.forceNewInstance(s -> { }), rules, alerts);
+        Patient patient = new Patient(1);
+
+        generator.onSample(patient, RecordTypes.SYSTOLIC_PRESSURE, 1000L, 150.0);
+        generator.onSample(patient, RecordTypes.ECG, 1500L, 6.0); // above the range
+        generator.onSample(patient, RecordTypes.ECG, 1600L, 3.0);
+
+        assertEquals(1, alerts.stream().filter(a -> a.getCondition().contains("Tachycardic Hypertension")).count());
+    }
+
+    @Test
+    void testSetRulesKeepsWindowState() {
+        List<Alert> alerts = new ArrayList<>();
+        AlertGenerator generator = new AlertGenerator(DataStorage.forceNewInstance(s -> { }),
+                AlertRules.defaults(), alerts);
+        Patient patient = new Patient(1);
+
+        generator.onSample(patient, RecordTypes.SYSTOLIC_PRESSURE, 1000L, 100.0);
+        generator.onSample(patient, RecordTypes.SYSTOLIC_PRESSURE, 2000L, 106.0);
+        generator.setRules(AlertRules.parse("{\"bloodPressure\": {\"trendDelta\": 5}}"));
+        generator.onSample(patient, RecordTypes.SYSTOLIC_PRESSURE, 3000L, 112.0);
+
+        // the trend spans readings from before and after the reload
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).getCondition().endsWith("Systolic Trend: [100.0, 106.0, 112.0]"));
+    }
+
+    @Test
+    void testReloaderAppliesOnlyValidChanges(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("alert-rules.json");
+        List<AlertRules> applied = new ArrayList<>();
+        AlertRulesReloader reloader = new AlertRulesReloader(file, applied::add);
+
+        assertFalse(reloader.reload()); // no file yet
+        write(file, "{\"oxygenSaturation\": {\"below\": 90}}", 1000L);
+        assertTrue(reloader.reload());
+        assertFalse(reloader.reload()); // unchanged
+        write(file, "{\"oxygenSaturation\": {\"belwo\": 88}}", 2000L);
+        assertFalse(reloader.reload());
+
+        assertEquals(1, applied.size());
+        assertFalse(applied.get(0).isCritical(RecordTypes.OXYGEN_SATURATION, 91));
+    }
+
+    private static void write(Path file, String json, long modified) throws IOException {
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+    }
+}
@@ -0,0 +1,117 @@
+package alerts;
+
+import com.alerts.Alert;
+import com.alerts.AlertGenerator;
+import com.alerts.CorrelationRule;
+import com.alerts.ShardedAlertEvaluator;
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedAlertEvaluatorTest {
+    private static final String[] LABELS = {"ECG", "SystolicPressure", "DiastolicPressure", "Saturation", "Alert"};
+
+    private static DataStorage randomStorage() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> { });
+        Random random = new Random(42);
+        for (int patientId = 1; patientId <= 300; patientId++) {
+            for (int i = 0; i < 50; i++) {
+                String label = LABELS[random.nextInt(LABELS.length)];
+                double value = label.equals("ECG") ? 50 + random.nextInt(150)
+                        : label.equals("Saturation") ? 85 + random.nextInt(15)
+                        : 50 + random.nextInt(160);
+                storage.addPatientData(patientId, value, label, 1_000_000L + i * 1000L);
+            }
+        }
+        return storage;
+    }
+
+    private static Map<String, List<String>> byPatient(List<Alert> alerts) {
+        Map<String, List<String>> grouped = new TreeMap<>();
+        for (Alert alert : alerts) {
+            grouped.computeIfAbsent(alert.getPatientId(), id -> new ArrayList<>())
+                   .add(alert.getTimestamp() + " " + alert.getCondition());
+        }
+        return grouped;
+    }
+
+    @Test
+    void testShardedResultsMatchSingleGenerator() throws InterruptedException {
+        DataStorage storage = randomStorage();
+        AlertGenerator single = new AlertGenerator(storage);
+        for (Patient patient : storage.getAllPatients()) {
+            single.evaluateNewData(patient);
+        }
+
+        try (ShardedAlertEvaluator sharded = new ShardedAlertEvaluator(storage, 4, CorrelationRule.defaults())) {
+            sharded.evaluateNewData();
+            assertFalse(single.getTriggeredAlerts().isEmpty());
+            assertEquals(byPatient(single.getTriggeredAlerts()), byPatient(sharded.getTriggeredAlerts()));
+
+            sharded.evaluateNewData(); // nothing new
+            assertEquals(single.getTriggeredAlerts().size(), sharded.getTriggeredAlerts().size());
+        }
+    }
+
+    @Test
+    void testPushedSamplesAreEvaluatedByTheirShard() throws InterruptedException {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> { });
+        try (ShardedAlertEvaluator sharded = new ShardedAlertEvaluator(storage, 3, CorrelationRule.defaults())) {
+            storage.addSampleListener(sharded);
+            for (int patientId = 1; patientId <= 30; patientId++) {
+                storage.addPatientData(patientId, 100.0, "SystolicPressure", 1000L);
+                storage.addPatientData(patientId, 111.0, "SystolicPressure", 2000L);
+                storage.addPatientData(patientId, 200.0, "SystolicPressure", 3000L);
+            }
+            sharded.flush();
+
+            Map<String, List<String>> alerts = byPatient(sharded.getTriggeredAlerts());
+            assertEquals(30, alerts.size());
+            for (List<String> conditions : alerts.values()) {
+                assertEquals(2, conditions.size());
+                assertTrue(conditions.get(0).contains("Critical Systolic"));
+                assertTrue(conditions.get(1).contains("Systolic Trend"));
+            }
+        }
+    }
+
+    @Test
+    void testFailedPushedSampleIsCountedAndWorkerKeepsRunning() throws InterruptedException {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> { });
+        try (ShardedAlertEvaluator sharded = new ShardedAlertEvaluator(storage, 1, CorrelationRule.defaults())) {
+            storage.addSampleListener(sharded);
+            sharded.onSample(new Patient(1), -1, 1000L, 1.0); // no such record type
+            storage.addPatientData(1, 200.0, "SystolicPressure", 2000L);
+            sharded.flush();
+
+            assertEquals(1, sharded.getFailedCount());
+            assertEquals(1, sharded.getTriggeredAlerts().size());
+        }
+    }
+
+    @Test
+    void testCloseFinishesQueuedWorkAndDropsLaterSamples() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> { });
+        ShardedAlertEvaluator sharded = new ShardedAlertEvaluator(storage, 2, CorrelationRule.defaults());
+        storage.addSampleListener(sharded);
+        for (int patientId = 1; patientId <= 20; patientId++) {
+            storage.addPatientData(patientId, 200.0, "SystolicPressure", 1000L);
+        }
+        sharded.close();
+        assertEquals(20, sharded.getTriggeredAlerts().size()); // close waited for the queue
+
+        storage.addPatientData(21, 200.0, "SystolicPressure", 2000L); // no longer registered
+        sharded.onSample(storage.getPatient(21), 0, 2000L, 200.0); // a caller that kept a reference
+        assertEquals(1, sharded.getDroppedCount());
+        assertEquals(0, storage.getListenerFailureCount());
+        assertEquals(20, sharded.getTriggeredAlerts().size());
+    }
+}
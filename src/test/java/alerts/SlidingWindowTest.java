@@ -0,0 +1,107 @@
+package alerts;
+
+import com.alerts.windows.MonotonicDeque;
+import com.alerts.windows.PatientStates;
+import com.alerts.windows.RingWindow;
+import com.alerts.windows.TimeWindow;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowTest {
+
+    @Test
+    void testRingWindowKeepsLastValuesAndSum() {
+        RingWindow window = new RingWindow(3);
+        assertEquals(0, window.average());
+        window.add(1);
+        window.add(2);
+        assertEquals("[1.0, 2.0]", window.toString());
+        window.add(3);
+        window.add(4);
+
+        assertTrue(window.isFull());
+        assertEquals(2.0, window.get(0));
+        assertEquals(4.0, window.get(2));
+        assertEquals(9.0, window.sum());
+        assertEquals(3.0, window.average());
+        assertThrows(IndexOutOfBoundsException.class, () -> window.get(3));
+    }
+
+    @Test
+    void testRingWindowSumDoesNotDrift() {
+        RingWindow window = new RingWindow(5);
+        Random random = new Random(1);
+        for (int i = 0; i < 1_000_000; i++) {
+            window.add(random.nextDouble() * 1e6);
+        }
+        double expected = 0;
+        for (int i = 0; i < window.size(); i++) {
+            expected += window.get(i);
+        }
+        assertEquals(expected, window.sum(), 1e-6);
+    }
+
+    @Test
+    void testTimeWindowMatchesBruteForce() {
+        TimeWindow window = new TimeWindow(100);
+        Deque<long[]> reference = new ArrayDeque<>();
+        Random random = new Random(7);
+        long time = 0;
+        for (int i = 0; i < 10_000; i++) {
+            time += random.nextInt(30);
+            long value = random.nextInt(1000);
+            window.add(time, value);
+            reference.addLast(new long[] {time, value});
+            while (reference.peekFirst()[0] < time - 100) {
+                reference.removeFirst();
+            }
+
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            long sum = 0;
+            for (long[] entry : reference) {
+                min = Math.min(min, entry[1]);
+                max = Math.max(max, entry[1]);
+                sum += entry[1];
+            }
+            assertEquals(reference.size(), window.size());
+            assertEquals(reference.peekFirst()[1], window.oldestValue());
+            assertEquals(min, window.min());
+            assertEquals(max, window.max());
+            assertEquals(sum, window.sum(), 1e-6);
+        }
+
+        window.advanceTo(time + 1000);
+        assertTrue(window.isEmpty());
+        assertThrows(IllegalStateException.class, window::oldestValue);
+    }
+
+    @Test
+    void testMonotonicDequeTracksMinimum() {
+        MonotonicDeque deque = new MonotonicDeque(false);
+        deque.push(1, 5);
+        deque.push(2, 3);
+        deque.push(3, 4);
+        assertEquals(3, deque.peek());
+        deque.evictBefore(3);
+        assertEquals(4, deque.peek());
+    }
+
+    @Test
+    void testPatientStatesCreatesOneStatePerPatient() {
+        PatientStates<RingWindow> states = new PatientStates<>(id -> new RingWindow(2));
+        for (int id = -500; id < 500; id++) {
+            states.get(id).add(id);
+        }
+        assertEquals(1000, states.size());
+        for (int id = -500; id < 500; id++) {
+            assertEquals(id, states.get(id).get(0));
+        }
+        assertEquals(1000, states.size());
+    }
+}
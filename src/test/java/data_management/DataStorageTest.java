@@ -2,15 +2,36 @@ package data_management;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.data_management.Aggregate;
 import com.data_management.BatchDataReader;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.data_management.DataStorage;
+import com.data_management.LatestValue;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecoveryDataReader;
+import com.data_management.RecordBatch;
+import com.data_management.RecordTypes;
+import com.data_management.Resolution;
+import com.data_management.RetentionPolicy;
+import com.data_management.StorageBackend;
+import com.data_management.VitalsSnapshot;
+import com.data_management.WriteAheadLog;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 class DataStorageTest {
 
@@ -86,4 +107,352 @@ class DataStorageTest {
         assertEquals(120.0, records.get(0).getMeasurementValue(), 0.001);
     }
 
+    @Test
+    void testSaturationAliasIsNormalized() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.reset();
+
+        storage.addPatientData(4, 97.0, "Saturation", 1000L);
+        List<PatientRecord> records = storage.getRecords(4, 0, Long.MAX_VALUE);
+
+        assertEquals(1, records.size());
+        assertEquals("OxygenSaturation", records.get(0).getRecordType());
+        assertEquals(RecordTypes.OXYGEN_SATURATION, records.get(0).getRecordTypeId());
+        assertEquals(RecordTypes.idOf("Saturation"), RecordTypes.idOf("OxygenSaturation"));
+    }
+
+
+    @Test
+    void testRetentionLimitsPerSeries() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        storage.setRetentionPolicy(new RetentionPolicy(5_000L, 3, RetentionPolicy.UNLIMITED));
+
+        for (int i = 0; i < 10; i++) {
+            storage.addPatientData(1, i, "ECG", i * 1000L);
+        }
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(7.0, records.get(0).getMeasurementValue(), 0.001);
+
+        storage.addPatientData(1, 99.0, "ECG", 20_000L); // everything else is now older than 5s
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(7, storage.getRetentionStats().getEvictedBySeriesLimit());
+        assertEquals(3, storage.getRetentionStats().getEvictedByAge());
+        assertEquals(1, storage.getRetentionStats().getStoredSamples());
+    }
+
+
+    @Test
+    void testGlobalBudgetEvictsOldestSamples() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        storage.setRetentionPolicy(new RetentionPolicy(RetentionPolicy.UNLIMITED, Integer.MAX_VALUE, 160));
+
+        for (int i = 0; i < 100; i++) {
+            storage.addPatientData(1, i, "ECG", i);
+            storage.addPatientData(2, i, "ECG", 1000L + i); // patient 2 is always newer
+        }
+
+        assertTrue(storage.getRetentionStats().getStoredSamples() <= 160);
+        assertEquals(200, storage.getRetentionStats().getStoredSamples()
+                + storage.getRetentionStats().getEvictedByTotalLimit());
+        assertEquals(100, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertTrue(storage.getRecords(1, 0, Long.MAX_VALUE).size() < 100);
+    }
+
+
+    @Test
+    void testOffHeapBackendMatchesHeapBackend() {
+        DataStorage heap = DataStorage.forceNewInstance(ds -> {});
+        heap.setStorageBackend(StorageBackend.HEAP);
+        DataStorage offHeap = DataStorage.forceNewInstance(ds -> {});
+        offHeap.setStorageBackend(StorageBackend.OFF_HEAP);
+
+        for (DataStorage storage : List.of(heap, offHeap)) {
+            storage.setRetentionPolicy(new RetentionPolicy(RetentionPolicy.UNLIMITED, 100, RetentionPolicy.UNLIMITED));
+            for (int i = 0; i < 300; i++) {
+                long timestamp = (i % 7 == 0) ? i * 10L - 25 : i * 10L; // some late samples
+                storage.addPatientData(1, i * 0.5, "ECG", timestamp);
+            }
+        }
+
+        List<PatientRecord> expected = heap.getRecords(1, 0, Long.MAX_VALUE);
+        List<PatientRecord> actual = offHeap.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(100, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+            assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+        }
+    }
+
+
+    @Test
+    void testCompressedBackendMatchesHeapBackend() {
+        DataStorage heap = DataStorage.forceNewInstance(ds -> {});
+        heap.setStorageBackend(StorageBackend.HEAP);
+        DataStorage compressed = DataStorage.forceNewInstance(ds -> {});
+        compressed.setStorageBackend(StorageBackend.COMPRESSED);
+
+        for (DataStorage storage : List.of(heap, compressed)) {
+            storage.setRetentionPolicy(new RetentionPolicy(RetentionPolicy.UNLIMITED, 4000, RetentionPolicy.UNLIMITED));
+            double saturation = 95;
+            for (int i = 0; i < 5000; i++) {
+                saturation += (i % 3) - 1;
+                long timestamp = (i % 50 == 0) ? i * 1000L - 2500 : i * 1000L + (i % 11 == 0 ? 3 : 0);
+                storage.addPatientData(1, saturation, "Saturation", timestamp);
+                storage.addPatientData(1, Math.sin(i) * 0.8, "ECG", timestamp);
+            }
+        }
+
+        for (long[] range : new long[][] {{0, Long.MAX_VALUE}, {1_500_000, 2_750_000}, {4_999_000, 4_999_000}}) {
+            List<PatientRecord> expected = heap.getRecords(1, range[0], range[1]);
+            List<PatientRecord> actual = compressed.getRecords(1, range[0], range[1]);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+                assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+                assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+            }
+
+            List<Double> expectedEcg = new ArrayList<>();
+            List<Double> actualEcg = new ArrayList<>();
+            heap.forEach(1, "ECG", range[0], range[1], (timestamp, value) -> expectedEcg.add(timestamp + value));
+            compressed.forEach(1, "ECG", range[0], range[1], (timestamp, value) -> actualEcg.add(timestamp + value));
+            assertEquals(expectedEcg, actualEcg);
+        }
+        assertEquals(8000, compressed.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+
+    @Test
+    void testAggregatesPerMinute() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.reset();
+
+        // three minutes of one sample every 10 seconds, value = minute index
+        for (int second = 0; second < 180; second += 10) {
+            storage.addPatientData(1, second / 60, "ECG", second * 1000L);
+        }
+        storage.addPatientData(1, 50.0, "ECG", 65_000L); // late sample in minute 1
+
+        List<Aggregate> minutes = storage.getAggregates(1, "ECG", 0, 179_999L, Resolution.MINUTE);
+        assertEquals(3, minutes.size());
+        assertEquals(6, minutes.get(0).getCount());
+        assertEquals(60_000L, minutes.get(1).getBucketStart());
+        assertEquals(7, minutes.get(1).getCount());
+        assertEquals(50.0, minutes.get(1).getMax(), 0.001);
+        assertEquals(1.0, minutes.get(1).getMin(), 0.001);
+        assertEquals(2.0, minutes.get(2).getAverage(), 0.001);
+
+        List<Aggregate> hours = storage.getAggregates(1, "ECG", 0, Long.MAX_VALUE, Resolution.HOUR);
+        assertEquals(1, hours.size());
+        assertEquals(19, hours.get(0).getCount());
+        assertTrue(storage.getAggregates(1, "Unknown", 0, Long.MAX_VALUE, Resolution.HOUR).isEmpty());
+    }
+
+
+    @Test
+    void testRetentionPolicyBoundsRollupBuckets() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+
+        for (int minute = 0; minute < 5; minute++) {
+            storage.addPatientData(1, minute, "ECG", minute * 60_000L);
+        }
+        assertEquals(5, storage.getAggregates(1, "ECG", 0, Long.MAX_VALUE, Resolution.MINUTE).size());
+
+        // tightening the policy trims the existing buckets
+        storage.setRetentionPolicy(RetentionPolicy.unbounded().withRetainedBuckets(Resolution.MINUTE, 2));
+        List<Aggregate> minutes = storage.getAggregates(1, "ECG", 0, Long.MAX_VALUE, Resolution.MINUTE);
+        assertEquals(2, minutes.size());
+        assertEquals(3 * 60_000L, minutes.get(0).getBucketStart());
+
+        storage.addPatientData(1, 5.0, "ECG", 5 * 60_000L);
+        storage.addPatientData(1, 9.0, "ECG", 60_000L); // older than every retained bucket
+        minutes = storage.getAggregates(1, "ECG", 0, Long.MAX_VALUE, Resolution.MINUTE);
+        assertEquals(2, minutes.size());
+        assertEquals(4 * 60_000L, minutes.get(0).getBucketStart());
+        assertEquals(7, storage.getAggregates(1, "ECG", 0, Long.MAX_VALUE, Resolution.HOUR).get(0).getCount());
+        assertThrows(IllegalArgumentException.class,
+                () -> RetentionPolicy.unbounded().withRetainedBuckets(Resolution.DAY, 0));
+        storage.setRetentionPolicy(RetentionPolicy.unbounded()); // the instance is the shared one now
+    }
+
+    @Test
+    void testFailingListenerDoesNotStopIngestion() {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        List<Integer> told = new ArrayList<>();
+        storage.addSampleListener((patient, recordTypeId, timestamp, value) -> {
+            throw new IllegalStateException("broken listener");
+        });
+        storage.addSampleListener((patient, recordTypeId, timestamp, value) -> told.add(patient.getPatientId()));
+
+        storage.addPatientData(1, 80.0, "ECG", 1000L);
+        RecordBatch batch = new RecordBatch();
+        batch.add(1, 81.0, RecordTypes.ECG, 2000L);
+        batch.add(2, 82.0, RecordTypes.ECG, 2000L);
+        storage.addPatientData(batch);
+
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(List.of(1, 1, 2), told);
+        assertEquals(3, storage.getListenerFailureCount());
+    }
+
+    @Test
+    void testLatestVitalsSnapshot() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.reset();
+
+        storage.addPatientData(1, 0.5, "ECG", 2000L);
+        storage.addPatientData(1, 0.4, "ECG", 1000L); // late, not the latest
+        storage.addPatientData(1, 97.0, "Saturation", 1500L);
+        storage.addPatientData(2, 120.0, "SystolicPressure", 3000L);
+
+        LatestValue ecg = storage.getLatest(1, "ECG");
+        assertEquals(2000L, ecg.getTimestamp());
+        assertEquals(0.5, ecg.getValue(), 0.001);
+        assertNull(storage.getLatest(2, "ECG"));
+
+        List<VitalsSnapshot> snapshots = storage.getLatestVitals();
+        assertEquals(2, snapshots.size());
+        VitalsSnapshot first = snapshots.stream().filter(v -> v.getPatientId() == 1).findFirst().get();
+        assertEquals(97.0, first.getLatest("OxygenSaturation").getValue(), 0.001);
+        assertEquals(2, first.getAll().size());
+    }
+
+
+    @Test
+    void testConcurrentIngestionAndQueries() throws Exception {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        int writers = 8;
+        int patients = 20;
+        int samplesPerWriter = 5_000;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < samplesPerWriter; i++) {
+                    int patientId = 1 + (i % patients);
+                    String type = (i % 2 == 0) ? "ECG" : "SystolicPressure";
+                    // interleave timestamps across writers so late inserts happen too
+                    long timestamp = (long) i * writers + writer;
+                    storage.addPatientData(patientId, i, type, timestamp);
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    for (Patient patient : storage.getAllPatients()) {
+                        List<PatientRecord> records = patient.getRecords(0, Long.MAX_VALUE);
+                        for (int j = 1; j < records.size(); j++) {
+                            assertTrue(records.get(j - 1).getTimestamp() <= records.get(j).getTimestamp());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(patients, storage.getAllPatients().size());
+        int total = 0;
+        for (int patientId = 1; patientId <= patients; patientId++) {
+            total += storage.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        }
+        assertEquals(writers * samplesPerWriter, total);
+    }
+
+    @Test
+    void testRecoveryFromSnapshotAndLogTail(@TempDir Path dir) throws IOException {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        storage.enableWriteAheadLog(dir, 0);
+        storage.addPatientData(1, 70.0, "ECG", 1000L);
+        storage.addPatientData(2, 95.0, "Saturation", 1000L);
+        storage.checkpoint();
+        storage.addPatientData(1, 71.0, "ECG", 2000L);
+        storage.addPatientData(1, 120.0, "SystolicPressure", 1500L);
+        storage.closeWriteAheadLog();
+
+        DataStorage recovered = DataStorage.forceNewInstance(new RecoveryDataReader(dir, null));
+        List<PatientRecord> records = recovered.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(1500L, records.get(1).getTimestamp());
+        assertEquals(71.0, recovered.getLatest(1, "ECG").getValue(), 0.001);
+        assertEquals(95.0, recovered.getLatest(2, "OxygenSaturation").getValue(), 0.001);
+
+        // a second recovery of the same directory must not duplicate samples
+        recovered = DataStorage.forceNewInstance(new RecoveryDataReader(dir, null));
+        assertEquals(3, recovered.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testRecoveryReplaysByLogPosition(@TempDir Path dir) throws IOException {
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        storage.setRetentionPolicy(new RetentionPolicy(RetentionPolicy.UNLIMITED, 2, RetentionPolicy.UNLIMITED));
+        storage.enableWriteAheadLog(dir, 0);
+        storage.addPatientData(1, 1.0, "ECG", 1000L);
+        storage.addPatientData(1, 2.0, "ECG", 2000L);
+        storage.addPatientData(1, 3.0, "ECG", 3000L); // evicts the first sample
+        storage.checkpoint();
+        storage.setRetentionPolicy(RetentionPolicy.unbounded());
+        storage.addPatientData(1, 4.0, "ECG", 4000L);
+        storage.addPatientData(1, 4.0, "ECG", 4000L); // a genuine duplicate
+        storage.closeWriteAheadLog();
+
+        DataStorage recovered = DataStorage.forceNewInstance(new RecoveryDataReader(dir, null));
+        List<PatientRecord> records = recovered.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(4, records.size());
+        assertEquals(2000L, records.get(0).getTimestamp());
+        assertEquals(4000L, records.get(3).getTimestamp());
+    }
+
+    @Test
+    void testFailedLogWriteIsCutOffAndStopsAppends(@TempDir Path dir) throws IOException {
+        boolean[] failWrites = {false};
+        WriteAheadLog wal = new WriteAheadLog(dir, TimeUnit.HOURS.toMillis(1), false) {
+            @Override
+            protected void write(FileChannel channel, ByteBuffer[] frame) throws IOException {
+                if (failWrites[0]) {
+                    channel.write(frame[0]); // torn: the header reaches the disk, the body does not
+                    throw new IOException("disk full");
+                }
+                super.write(channel, frame);
+            }
+        };
+        wal.append(1, RecordTypes.ECG, 1000L, 1.0);
+        wal.sync();
+        Path segment = WriteAheadLog.segments(dir).get(0);
+        long goodBytes = Files.size(segment);
+        failWrites[0] = true;
+        wal.append(1, RecordTypes.ECG, 2000L, 2.0);
+        assertThrows(IOException.class, wal::sync);
+        assertThrows(IllegalStateException.class, () -> wal.append(1, RecordTypes.ECG, 3000L, 3.0));
+        wal.close();
+        assertEquals(goodBytes, Files.size(segment)); // the torn batch was cut off
+
+        try (WriteAheadLog next = new WriteAheadLog(dir, TimeUnit.HOURS.toMillis(1), false)) {
+            next.append(1, RecordTypes.ECG, 4000L, 4.0);
+        }
+
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        for (Path file : WriteAheadLog.segments(dir)) {
+            WriteAheadLog.replay(file, storage);
+        }
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals(1000L, records.get(0).getTimestamp());
+        assertEquals(4000L, records.get(1).getTimestamp());
+    }
 }
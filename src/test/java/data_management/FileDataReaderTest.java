@@ -1,12 +1,19 @@
 package data_management;
 
+import com.cardio_generator.outputs.BinaryFileOutputStrategy;
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.data_management.BinaryFileDataReader;
 import com.data_management.DataStorage;
 import com.data_management.FileDataReader;
+import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.TailingFileDataReader;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,6 +35,23 @@ public class FileDataReaderTest {
         assertEquals(0.5, records.get(0).getMeasurementValue(), 0.001);
     }
 
+    @Test
+    void testJsonLinesFileIsRead() throws IOException {
+        Path tempDir = Files.createTempDirectory("testdata");
+        String content = "{\"patientId\": 1, \"timestamp\": 1743760000000, \"label\": \"ECG\", \"data\": 0.5}\n"
+                + "{\"patientId\": 1, \"timestamp\": 1743760000001, \"HeartRate\": 72, \"Saturation\": \"97%\"}\n"
+                + "\n"
+                + "{\"patientId\": 1, \"timestamp\": \"oops\", \"HeartRate\": 72}\n";
+        Files.write(tempDir.resolve("device.jsonl"), content.getBytes());
+
+        DataStorage storage = DataStorage.forceNewInstance(new FileDataReader(tempDir.toString()));
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(0.5, storage.getRecords(1, 1743760000000L, 1743760000000L).get(0).getMeasurementValue());
+        assertEquals(2, storage.getRecords(1, 1743760000001L, 1743760000001L).size());
+    }
+
     @Test
     void testMalformedLineIsSkipped() throws IOException {
         Path tempDir = Files.createTempDirectory("testdata");
@@ -57,4 +81,169 @@ public class FileDataReaderTest {
         assertEquals("Alert", records.get(0).getRecordType());
         assertEquals(0.0, records.get(0).getMeasurementValue());
     }
+
+    @Test
+    void testParallelReadMatchesSequentialRead() throws IOException {
+        Path tempDir = Files.createTempDirectory("testdata");
+        String[] labels = {"ECG", "SystolicPressure", "DiastolicPressure", "Saturation", "Cholesterol"};
+        for (String label : labels) {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                content.append("Patient ID: ").append(1 + i % 7)
+                        .append(", Timestamp: ").append(1743760000000L + i * 10L)
+                        .append(", Label: ").append(label)
+                        .append(", Data: ").append(i * 0.25).append(label.equals("Saturation") ? "%" : "")
+                        .append('\n');
+            }
+            Files.write(tempDir.resolve(label + ".txt"), content.toString().getBytes());
+        }
+
+        DataStorage sequential = DataStorage.forceNewInstance(new FileDataReader(tempDir.toString()));
+        List<String> expected = dump(sequential);
+        DataStorage parallel = DataStorage.forceNewInstance(new FileDataReader(tempDir.toString(), 4));
+        List<String> actual = dump(parallel);
+
+        assertEquals(labels.length * 2000, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testChunkedReadOfLargeFileMatchesSequentialRead() throws IOException {
+        Path tempDir = Files.createTempDirectory("testdata");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("Patient ID: ").append(1 + i % 7)
+                    .append(", Timestamp: ").append(1743760000000L + i)
+                    .append(", Label: ECG, Data: ").append(i * 0.001)
+                    .append(i % 3 == 0 ? "\r\n" : i < 2500 ? "\n" : "\r"); // CR-only in the second half
+        }
+        content.append("Patient ID: 1, Timestamp: 1743770000000, Label: ECG, Data: 1.5"); // no final newline
+        Files.write(tempDir.resolve("ECG.txt"), content.toString().getBytes());
+
+        DataStorage sequential = DataStorage.forceNewInstance(new FileDataReader(tempDir.toString()));
+        List<String> expected = dump(sequential);
+        // 4 KB chunks split the ~350 KB file into many mapped pieces
+        DataStorage chunked = DataStorage.forceNewInstance(new FileDataReader(tempDir.toString(), 4, 4096));
+        List<String> actual = dump(chunked);
+
+        assertEquals(5001, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testTailingReaderIngestsOnlyAppendedLines() throws IOException {
+        Path tempDir = Files.createTempDirectory("testdata");
+        Path file = tempDir.resolve("ECG.txt");
+        Files.write(file, "Patient ID: 1, Timestamp: 1000, Label: ECG, Data: 0.1\n".getBytes());
+
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        TailingFileDataReader tailer = new TailingFileDataReader(tempDir.toString());
+        tailer.readData(storage);
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+
+        // a partial line is only ingested once it is complete
+        Files.write(file, "Patient ID: 1, Timestamp: 2000, Label: ECG, Da".getBytes(), StandardOpenOption.APPEND);
+        tailer.readData(storage);
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        Files.write(file, "ta: 0.2\n".getBytes(), StandardOpenOption.APPEND);
+        tailer.readData(storage);
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals(0.2, records.get(1).getMeasurementValue(), 0.001);
+
+        // nothing new, nothing added
+        assertEquals(0, tailer.poll(storage));
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+
+        // a truncated file is read again from the start
+        Files.write(file, "Patient ID: 2, Timestamp: 3000, Label: ECG, Data: 0.3\n".getBytes());
+        tailer.readData(storage);
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testTailingReaderFollowsJsonLinesFiles() throws IOException {
+        Path tempDir = Files.createTempDirectory("testdata");
+        Path file = tempDir.resolve("device.jsonl");
+        Files.write(file, "{\"patientId\": 3, \"timestamp\": 1000, \"label\": \"ECG\", \"data\": 0.1}\n".getBytes());
+
+        DataStorage storage = DataStorage.forceNewInstance(ds -> {});
+        TailingFileDataReader tailer = new TailingFileDataReader(tempDir.toString());
+        tailer.readData(storage);
+        Files.write(file, "{\"patientId\": 3, \"timestamp\": 2000, \"HeartRate\": 72}\n".getBytes(),
+                StandardOpenOption.APPEND);
+        tailer.readData(storage);
+
+        assertEquals(2, storage.getRecords(3, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testBinaryFilesMatchTextFilesAndAreSmaller() throws IOException {
+        Path textDir = Files.createTempDirectory("text");
+        Path binaryDir = Files.createTempDirectory("binary");
+        FileOutputStrategy text = new FileOutputStrategy(textDir.toString());
+        BinaryFileOutputStrategy binary = new BinaryFileOutputStrategy(binaryDir.toString());
+        String[] labels = {"ECG", "Saturation", "SystolicPressure", "Alert"};
+        for (int i = 0; i < 9000; i++) {
+            String label = labels[i % labels.length];
+            String data = label.equals("Alert") ? (i % 8 == 3 ? "triggered" : "resolved")
+                    : label.equals("Saturation") ? (90 + i % 10) + "%" : String.valueOf(i * 0.37);
+            text.output(1 + i % 7, 1743760000000L + i * 3L, label, data);
+            binary.output(1 + i % 7, 1743760000000L + i * 3L, label, data);
+        }
+        binary.flush();
+
+        List<String> expected = dump(DataStorage.forceNewInstance(new FileDataReader(textDir.toString())));
+        List<String> actual = dump(DataStorage.forceNewInstance(new BinaryFileDataReader(binaryDir.toString())));
+        assertEquals(9000, expected.size());
+        assertEquals(expected, actual);
+
+        long textBytes = 0;
+        for (String label : labels) {
+            textBytes += Files.size(textDir.resolve(label + ".txt"));
+        }
+        assertTrue(Files.size(binaryDir.resolve("records.bin")) * 5 < textBytes);
+
+        // the block index lets a time range skip whole blocks
+        DataStorage range = DataStorage.forceNewInstance(
+                new BinaryFileDataReader(binaryDir.toString(), 1743760000000L, 1743760000000L + 299));
+        int loaded = 0;
+        for (int patientId = 1; patientId <= 7; patientId++) {
+            loaded += range.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        }
+        assertEquals(100, loaded);
+    }
+
+    @Test
+    void testBinaryOutputCutsTornBlockBeforeAppending() throws IOException {
+        Path dir = Files.createTempDirectory("binary");
+        try (BinaryFileOutputStrategy first = new BinaryFileOutputStrategy(dir.toString())) {
+            first.output(1, 1000L, "ECG", "1.0");
+        }
+        // a crash in the middle of the second block leaves half a block behind
+        byte[] data = Files.readAllBytes(dir.resolve("records.bin"));
+        Files.write(dir.resolve("records.bin"), Arrays.copyOf(data, data.length / 2),
+                StandardOpenOption.APPEND);
+
+        try (BinaryFileOutputStrategy second = new BinaryFileOutputStrategy(dir.toString())) {
+            second.output(1, 2000L, "ECG", "2.0");
+        }
+
+        assertEquals(2 * data.length, Files.size(dir.resolve("records.bin")));
+        DataStorage storage = DataStorage.forceNewInstance(new BinaryFileDataReader(dir.toString()));
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    private static List<String> dump(DataStorage storage) {
+        List<String> lines = new ArrayList<>();
+        for (int patientId = 1; patientId <= 7; patientId++) {
+            Patient patient = storage.getPatient(patientId);
+            for (PatientRecord record : patient.getRecords()) {
+                lines.add(patientId + "," + record.getTimestamp() + "," + record.getRecordType() + ","
+                        + record.getMeasurementValue());
+            }
+        }
+        return lines;
+    }
 }
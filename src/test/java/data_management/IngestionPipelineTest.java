@@ -0,0 +1,117 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.data_management.DataStorage;
+import com.data_management.IngestionPipeline;
+import com.data_management.OverflowPolicy;
+import com.data_management.PatientRecord;
+import com.data_management.RecordBatch;
+import com.data_management.RecordTypes;
+
+import java.util.List;
+
+class IngestionPipelineTest {
+    private static final int RECORDS = 20000;
+
+    private List<PatientRecord> ingest(OverflowPolicy policy, IngestionPipeline[] out) throws InterruptedException {
+        DataStorage storage = DataStorage.forceNewInstance(s -> { });
+        int heartRate = RecordTypes.idOf("HeartRate");
+        IngestionPipeline pipeline = new IngestionPipeline(storage, 8, policy);
+        for (int i = 0; i < RECORDS; i++) {
+            pipeline.offer(1, i, heartRate, 1000L + i);
+        }
+        pipeline.flush();
+        assertEquals(0, pipeline.getQueueDepth());
+        pipeline.close();
+        out[0] = pipeline;
+        return storage.getRecords(1, 0, Long.MAX_VALUE);
+    }
+
+    @Test
+    void testBlockAppliesEveryRecordInOrder() throws InterruptedException {
+        IngestionPipeline[] pipeline = new IngestionPipeline[1];
+        List<PatientRecord> records = ingest(OverflowPolicy.BLOCK, pipeline);
+
+        assertEquals(RECORDS, records.size());
+        assertEquals(RECORDS, pipeline[0].getAppliedCount());
+        assertEquals(0, pipeline[0].getDroppedCount());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(i, records.get(i).getMeasurementValue());
+        }
+    }
+
+    @Test
+    void testSpillLosesNothing() throws InterruptedException {
+        IngestionPipeline[] pipeline = new IngestionPipeline[1];
+        List<PatientRecord> records = ingest(OverflowPolicy.SPILL, pipeline);
+
+        assertEquals(RECORDS, records.size());
+        assertEquals(RECORDS, pipeline[0].getAppliedCount());
+        assertEquals(0, pipeline[0].getDroppedCount());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(1000L + i, records.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    void testDropOldestCountsDrops() throws InterruptedException {
+        IngestionPipeline[] pipeline = new IngestionPipeline[1];
+        List<PatientRecord> records = ingest(OverflowPolicy.DROP_OLDEST, pipeline);
+
+        assertEquals(RECORDS, pipeline[0].getReceivedCount());
+        assertEquals(RECORDS, pipeline[0].getAppliedCount() + pipeline[0].getDroppedCount());
+        assertEquals(pipeline[0].getAppliedCount(), records.size());
+        // the newest record is never the one dropped
+        assertEquals(RECORDS - 1, records.get(records.size() - 1).getMeasurementValue());
+    }
+
+    @Test
+    void testOfferAfterCloseFails() {
+        IngestionPipeline pipeline = new IngestionPipeline(DataStorage.forceNewInstance(s -> { }), 4,
+                OverflowPolicy.BLOCK);
+        pipeline.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.offer(1, 1.0, 0, 1L));
+    }
+
+    @Test
+    void testWriterSurvivesListenerFailure() throws InterruptedException {
+        DataStorage storage = DataStorage.forceNewInstance(s -> { });
+        storage.addSampleListener((patient, type, timestamp, value) -> {
+            if (value < 0) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        IngestionPipeline pipeline = new IngestionPipeline(storage, 1, OverflowPolicy.BLOCK);
+        pipeline.offer(1, -1.0, 0, 1000L);
+        pipeline.flush();
+        for (int i = 0; i < 100; i++) {
+            pipeline.offer(1, i, 0, 2000L + i); // would hang if the writer had died
+        }
+        pipeline.close();
+
+        // the storage isolates the listener, so the record is stored and the writer never sees it fail
+        assertEquals(0, pipeline.getFailedCount());
+        assertEquals(101, pipeline.getAppliedCount());
+        assertEquals(1, storage.getListenerFailureCount());
+    }
+
+    @Test
+    void testFailedRecordDoesNotLoseRestOfBatch() throws InterruptedException {
+        DataStorage storage = DataStorage.forceNewInstance(s -> { });
+        IngestionPipeline pipeline = new IngestionPipeline(storage, 1024, OverflowPolicy.BLOCK);
+        RecordBatch batch = new RecordBatch();
+        for (int i = 0; i < 10; i++) {
+            batch.add(1 + i % 2, i, i == 4 ? -1 : RecordTypes.ECG, 1000L + i); // no record type -1
+        }
+        pipeline.offer(batch);
+        pipeline.close();
+
+        assertEquals(1, pipeline.getFailedCount());
+        assertEquals(9, pipeline.getAppliedCount());
+        assertEquals(4, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(5, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+    }
+}
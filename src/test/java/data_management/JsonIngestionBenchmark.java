@@ -0,0 +1,71 @@
+package data_management;
+
+import com.data_management.JsonRecordCodec;
+import com.data_management.RecordBatch;
+import com.data_management.RecordLineParser;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the throughput of decoding the same records from the simulator's
+ * text format, from JSON with {@link JsonRecordCodec}, and from JSON with a
+ * full org.json DOM per message. Not a unit test; run its main method, e.g.
+ * {@code java -cp target/classes:target/test-classes:<org.json jar> data_management.JsonIngestionBenchmark}.
+ */
+public class JsonIngestionBenchmark {
+    private static final int RECORDS = 1_000_000;
+    private static final int ROUNDS = 5;
+    private static final String[] LABELS = {"ECG", "HeartRate", "Saturation", "SystolicPressure"};
+
+    public static void main(String[] args) {
+        byte[][] text = new byte[RECORDS][];
+        byte[][] json = new byte[RECORDS][];
+        String[] jsonStrings = new String[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            int patientId = i % 1000;
+            long timestamp = 1743760000000L + i;
+            String label = LABELS[i % LABELS.length];
+            String value = String.valueOf((i % 2000) / 10.0);
+            text[i] = ("Patient ID: " + patientId + ", Timestamp: " + timestamp + ", Label: " + label
+                    + ", Data: " + value).getBytes(StandardCharsets.UTF_8);
+            jsonStrings[i] = "{\"patientId\":" + patientId + ",\"timestamp\":" + timestamp + ",\"label\":\""
+                    + label + "\",\"data\":" + value + "}";
+            json[i] = jsonStrings[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        RecordLineParser parser = new RecordLineParser();
+        JsonRecordCodec codec = new JsonRecordCodec();
+        RecordBatch batch = new RecordBatch(RECORDS);
+        for (int round = 1; round <= ROUNDS; round++) {
+            batch.clear();
+            long start = System.nanoTime();
+            for (byte[] line : text) {
+                parser.decode(ByteBuffer.wrap(line), 0, line.length, batch);
+            }
+            report(round, "text", start, batch);
+
+            batch.clear();
+            start = System.nanoTime();
+            for (byte[] line : json) {
+                codec.decode(ByteBuffer.wrap(line), 0, line.length, batch);
+            }
+            report(round, "json fast path", start, batch);
+
+            batch.clear();
+            start = System.nanoTime();
+            for (String message : jsonStrings) {
+                JSONObject object = new JSONObject(message);
+                batch.add(object.getInt("patientId"), object.getDouble("data"), 0, object.getLong("timestamp"));
+            }
+            report(round, "json org.json", start, batch);
+        }
+    }
+
+    private static void report(int round, String name, long start, RecordBatch batch) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("round %d %-14s %,12.0f records/s (%d records)%n",
+                round, name, batch.size() / seconds, batch.size());
+    }
+}
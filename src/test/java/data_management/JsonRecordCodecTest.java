@@ -0,0 +1,88 @@
+package data_management;
+
+import com.data_management.JsonRecordCodec;
+import com.data_management.RecordBatch;
+import com.data_management.RecordTypes;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonRecordCodecTest {
+
+    @Test
+    void testSingleRecordMessage() {
+        JsonRecordCodec codec = new JsonRecordCodec();
+        RecordBatch batch = new RecordBatch();
+        assertTrue(codec.decode("{\"patientId\":12,\"timestamp\":1743760000000,\"label\":\"ECG\",\"data\":0.5}", batch));
+
+        assertEquals(1, batch.size());
+        assertEquals(12, batch.getPatientId(0));
+        assertEquals(1743760000000L, batch.getTimestamp(0));
+        assertEquals(RecordTypes.ECG, batch.getRecordTypeId(0));
+        assertEquals(0.5, batch.getMeasurementValue(0));
+    }
+
+    @Test
+    void testSeveralVitalsInOneMessage() {
+        JsonRecordCodec codec = new JsonRecordCodec();
+        RecordBatch batch = new RecordBatch();
+        assertTrue(codec.decode(" { \"timestamp\" : 5 , \"patientId\" : \"3\", \"Saturation\": \"97%\","
+                + " \"Alert\": \"triggered\", \"HeartRate\": 7.2e1 } ", batch));
+
+        assertEquals(3, batch.size());
+        assertEquals(RecordTypes.OXYGEN_SATURATION, batch.getRecordTypeId(0));
+        assertEquals(97.0, batch.getMeasurementValue(0));
+        assertEquals(RecordTypes.ALERT, batch.getRecordTypeId(1));
+        assertEquals(0.0, batch.getMeasurementValue(1));
+        assertEquals(72.0, batch.getMeasurementValue(2));
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(3, batch.getPatientId(i));
+            assertEquals(5L, batch.getTimestamp(i));
+        }
+    }
+
+    @Test
+    void testFallbackForNestedObjectsArraysAndEscapes() {
+        JsonRecordCodec codec = new JsonRecordCodec();
+        RecordBatch batch = new RecordBatch();
+        assertTrue(codec.decode("{\"patientId\":1,\"timestamp\":2,\"vitals\":{\"HeartRate\":60}}", batch));
+        assertTrue(codec.decode("[{\"patientId\":1,\"timestamp\":3,\"label\":\"ECG\",\"data\":0.1},"
+                + "{\"patientId\":2,\"timestamp\":3,\"label\":\"ECG\",\"data\":0.2}]", batch));
+        assertTrue(codec.decode("{\"patientId\":1,\"timestamp\":4,\"label\":\"E\\u0043G\",\"data\":0.3}", batch));
+
+        assertEquals(4, batch.size());
+        assertEquals(60.0, batch.getMeasurementValue(0));
+        assertEquals(2, batch.getPatientId(2));
+        assertEquals(RecordTypes.ECG, batch.getRecordTypeId(3));
+    }
+
+    @Test
+    void testInvalidMessagesAddNothing() {
+        JsonRecordCodec codec = new JsonRecordCodec();
+        RecordBatch batch = new RecordBatch();
+        assertFalse(codec.decode("{\"patientId\":1,\"timestamp\":2,\"HeartRate\":60,\"ECG\":\"abc\"}", batch));
+        assertFalse(codec.decode("{\"patientId\":1,\"HeartRate\":60}", batch));
+        assertFalse(codec.decode("{\"patientId\":\"x\",\"timestamp\":2,\"HeartRate\":60}", batch));
+        assertFalse(codec.decode("{\"patientId\":1,\"timestamp\":2,\"HeartRate\":60", batch));
+        assertFalse(codec.decode("{\"patientId\":1,\"timestamp\":2,\"label\":\"ECG\"}", batch));
+        assertFalse(codec.decode("[{\"patientId\":1,\"timestamp\":2,\"ECG\":1}, 7]", batch));
+        assertFalse(codec.decode("1,2,ECG,0.5", batch));
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    void testMatchesOrgJsonOnFlatMessages() {
+        JsonRecordCodec codec = new JsonRecordCodec();
+        String[] values = {"0", "-1.5", "98.6", "1e3", "\"42%\"", "0.1234567890123456789", "9007199254740993"};
+        for (String value : values) {
+            String message = "{\"patientId\":7,\"timestamp\":1743760000000,\"label\":\"ECG\",\"data\":" + value + "}";
+            RecordBatch batch = new RecordBatch();
+            assertTrue(codec.decode(message, batch), message);
+            Object expected = new JSONObject(message).get("data");
+            double expectedValue = expected instanceof Number ? ((Number) expected).doubleValue()
+                    : Double.parseDouble(expected.toString().replace("%", ""));
+            assertEquals(expectedValue, batch.getMeasurementValue(0), message);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 
 import java.util.List;
 
@@ -63,4 +64,60 @@ class PatientTest {
         assertEquals("HeartRate", records.get(0).getRecordType());
     }
 
+    @Test
+    void testRecordsAreMergedInTimestampOrder() {
+        Patient patient = new Patient(5);
+
+        patient.addRecord(120.0, "SystolicPressure", 3000L);
+        patient.addRecord(0.5, "ECG", 1000L);
+        patient.addRecord(0.7, "ECG", 4000L);
+        patient.addRecord(0.6, "ECG", 2000L); // arrives late
+
+        List<PatientRecord> records = patient.getRecords(0, Long.MAX_VALUE);
+        assertEquals(4, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+        }
+        assertEquals(0.6, records.get(1).getMeasurementValue(), 0.001);
+        assertEquals("SystolicPressure", records.get(2).getRecordType());
+    }
+
+    @Test
+    void testVisitorsSeeRecordsWithoutCopying() {
+        Patient patient = new Patient(8);
+        patient.addRecord(0.5, "ECG", 1000L);
+        patient.addRecord(120.0, "SystolicPressure", 1500L);
+        patient.addRecord(0.6, "ECG", 2000L);
+        patient.addRecord(0.7, "ECG", 3000L);
+
+        double[] sum = {0};
+        int visited = patient.forEach(RecordTypes.ECG, 1500L, 3000L, (timestamp, value) -> sum[0] += value);
+        assertEquals(2, visited);
+        assertEquals(1.3, sum[0], 0.001);
+
+        StringBuilder order = new StringBuilder();
+        patient.forEachRecord(0, Long.MAX_VALUE,
+                (recordTypeId, timestamp, value) -> order.append(RecordTypes.labelOf(recordTypeId)).append(' '));
+        assertEquals("ECG SystolicPressure ECG ECG ", order.toString());
+
+        assertEquals(List.of("ECG", "SystolicPressure"), patient.getRecordTypes());
+        assertThrows(UnsupportedOperationException.class, () -> patient.getRecordTypes().add("ECG"));
+    }
+
+    @Test
+    void testLateRecordsAreReorderedBeforeReads() {
+        Patient patient = new Patient(9);
+        for (int i = 0; i < 200; i++) {
+            // every fifth record arrives 3 steps late, enough to overflow the reorder buffer
+            long timestamp = (i % 5 == 4) ? (i - 3) * 10L + 5 : i * 10L;
+            patient.addRecord(i, "ECG", timestamp);
+        }
+
+        List<PatientRecord> records = patient.getRecords();
+        assertEquals(200, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+        }
+    }
+
 }
@@ -0,0 +1,147 @@
+package data_management;
+
+import com.data_management.RecordLineParser;
+import com.data_management.RecordTypes;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordLineParserTest {
+
+    @Test
+    void testTypicalLines() {
+        RecordLineParser parser = new RecordLineParser();
+        assertTrue(parse(parser, "Patient ID: 12, Timestamp: 1743760000000, Label: ECG, Data: 0.5"));
+        assertEquals(12, parser.getPatientId());
+        assertEquals(1743760000000L, parser.getTimestamp());
+        assertEquals(RecordTypes.ECG, parser.getRecordTypeId());
+        assertEquals(0.5, parser.getValue());
+
+        assertTrue(parse(parser, "Patient ID: 3, Timestamp: 1, Label: Saturation, Data: 97.0%"));
+        assertEquals(RecordTypes.OXYGEN_SATURATION, parser.getRecordTypeId());
+        assertEquals(97.0, parser.getValue());
+
+        assertTrue(parse(parser, "Patient ID: 3, Timestamp: 1, Label: Alert, Data: triggered"));
+        assertEquals(RecordTypes.ALERT, parser.getRecordTypeId());
+        assertEquals(0.0, parser.getValue());
+
+        assertFalse(parse(parser, "This is not a valid record line"));
+        assertFalse(parse(parser, "Patient ID: x, Timestamp: 1, Label: ECG, Data: 1"));
+    }
+
+    @Test
+    void testCsvLines() {
+        RecordLineParser parser = new RecordLineParser(false);
+        assertTrue(parse(parser, "12,1743760000000,ECG,0.5"));
+        assertEquals(12, parser.getPatientId());
+        assertEquals(1743760000000L, parser.getTimestamp());
+        assertEquals(RecordTypes.ECG, parser.getRecordTypeId());
+        assertEquals(0.5, parser.getValue());
+
+        assertTrue(parse(parser, " 3, 1, Saturation, 97% "));
+        assertEquals(97.0, parser.getValue());
+
+        assertFalse(parse(parser, "Patient ID: 12, Timestamp: 1, Label: ECG, Data: 0.5"));
+        assertFalse(parse(parser, "12,1,ECG"));
+    }
+
+    @Test
+    void testMatchesSplitBasedParserOnEdgeCases() {
+        String[] values = {
+            "0", "-0", "+1", "0.1", "1.", ".5", "98%", "%9%8%", "-12.3456789", "1e3", "1E-7", "NaN",
+            "-Infinity", "0x1p3", "1.5d", "123456789012345678901234", "0.1234567890123456789",
+            "9007199254740993", "4.35", "", "-", ".", "1.2.3", "abc", " 7 ", "7 %", "2,5"
+        };
+        String[] ids = {"1", "+7", "-3", "007", "2147483647", "2147483648", "", "x", "١٢"};
+        String[] labels = {"ECG", "Saturation", "Alert", "alert", "ManualAlert", "Cholesterol", " ECG "};
+        List<String> lines = new ArrayList<>();
+        for (String value : values) {
+            for (String label : labels) {
+                lines.add("Patient ID: 1, Timestamp: 1700000000000, Label: " + label + ", Data: " + value);
+            }
+        }
+        for (String id : ids) {
+            lines.add("Patient ID: " + id + ", Timestamp: 5, Label: ECG, Data: 1.0");
+        }
+        lines.add("Patient ID: 1, Timestamp: 9223372036854775807, Label: ECG, Data: 1");
+        lines.add("Patient ID: 1, Timestamp: 9223372036854775808, Label: ECG, Data: 1");
+        lines.add("Patient ID: 1,Timestamp:5,Label:ECG,Data:2");
+        lines.add("Patient ID: 1, Timestamp: 5, Label: ECG, Data: 2, ");
+        lines.add("Patient ID: 1, Timestamp: 5, Label: ECG, Data: 2,, ,");
+        lines.add("Patient ID: 1, Timestamp: 5, Label: ECG, Data: 2, extra");
+        lines.add("Patient ID: 1, Timestamp: 5, Label: ECG");
+        lines.add("Patient ID: 1, Timestamp: 5, Label: ECG,");
+        lines.add("Patient ID: 1, , Label: ECG, Data: 2");
+        lines.add("Patient ID: 1, Timestamp: 5, Label: a:b, Data: 2:3");
+        lines.add("\tPatient ID:\t1 , Timestamp: 5\t, Label: ECG , Data: 2 ");
+        lines.add("");
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double value = random.nextInt(4) == 0 ? random.nextGaussian() * 1e6 : random.nextDouble() * 200;
+            lines.add("Patient ID: " + random.nextInt(100) + ", Timestamp: " + random.nextLong()
+                    + ", Label: " + labels[random.nextInt(labels.length)] + ", Data: " + value);
+        }
+
+        RecordLineParser parser = new RecordLineParser();
+        for (String line : lines) {
+            assertEquals(SplitParser.parse(line), fastParse(parser, line), line);
+        }
+    }
+
+    private static boolean parse(RecordLineParser parser, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static String fastParse(RecordLineParser parser, String line) {
+        // surround the line with other bytes to check the parser stays within its range
+        byte[] bytes = ("xx," + line + ",yy").getBytes(StandardCharsets.UTF_8);
+        if (!parser.parse(ByteBuffer.wrap(bytes), 3, bytes.length - 3)) {
+            return "invalid";
+        }
+        return parser.getPatientId() + "|" + parser.getTimestamp() + "|"
+                + RecordTypes.labelOf(parser.getRecordTypeId()) + "|" + Double.doubleToRawLongBits(parser.getValue());
+    }
+
+    /**
+     * The split-based parser FileDataReader used before RecordLineParser,
+     * kept as the reference implementation.
+     */
+    private static final class SplitParser {
+        static String parse(String line) {
+            try {
+                String[] splits = line.split(",\\s*");
+                if (splits.length != 4) {
+                    return "invalid";
+                }
+
+                int patientId = Integer.parseInt(splits[0].split(":", 2)[1].trim());
+                long timestamp = Long.parseLong(splits[1].split(":", 2)[1].trim());
+                String label = splits[2].split(":", 2)[1].trim();
+                String rawValue = splits[3].split(":", 2)[1].trim().replace("%", "");
+
+                double value;
+                if (label.equalsIgnoreCase("Alert") || label.equalsIgnoreCase("ManualAlert")) {
+                    try {
+                        value = Double.parseDouble(rawValue);
+                    } catch (NumberFormatException e) {
+                        value = 0.0;
+                    }
+                } else {
+                    value = Double.parseDouble(rawValue);
+                }
+                return patientId + "|" + timestamp + "|" + RecordTypes.labelOf(RecordTypes.idOf(label)) + "|"
+                        + Double.doubleToRawLongBits(value);
+            } catch (Exception e) {
+                return "invalid";
+            }
+        }
+    }
+}
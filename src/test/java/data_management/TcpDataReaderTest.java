@@ -0,0 +1,83 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.TcpDataReader;
+
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+class TcpDataReaderTest {
+
+    @Test
+    void testReadsFromSeveralServersAtOnce() throws Exception {
+        DataStorage storage = DataStorage.forceNewInstance(s -> { });
+        TcpDataReader reader = new TcpDataReader(storage);
+        try (ServerSocket first = new ServerSocket(0); ServerSocket second = new ServerSocket(0)) {
+            reader.connect("tcp://localhost:" + first.getLocalPort());
+            reader.connect("localhost:" + second.getLocalPort());
+
+            try (Socket a = first.accept(); Socket b = second.accept()) {
+                PrintWriter outA = new PrintWriter(a.getOutputStream(), true);
+                PrintWriter outB = new PrintWriter(b.getOutputStream(), true);
+                for (int i = 0; i < 1000; i++) {
+                    outA.println("1," + (1000 + i) + ",ECG," + (i / 100.0));
+                    outB.println("2," + (1000 + i) + ",Saturation,9" + (i % 10) + "%");
+                }
+                outA.println("not,a,valid,record");
+                outB.println("2,5000,Alert,triggered");
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((count(storage, 1) < 1000 || count(storage, 2) < 1001)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            reader.disconnect();
+        }
+
+        assertEquals(1000, count(storage, 1));
+        assertEquals(1001, count(storage, 2));
+        assertEquals(9.99, storage.getRecords(1, 1999, 1999).get(0).getMeasurementValue(), 1e-9);
+        assertEquals(99.0, storage.getRecords(2, 1999, 1999).get(0).getMeasurementValue(), 1e-9);
+        assertEquals(0.0, storage.getRecords(2, 5000, 5000).get(0).getMeasurementValue());
+    }
+
+    @Test
+    void testOverlongLineIsDroppedAndReadingResumes() throws Exception {
+        DataStorage storage = DataStorage.forceNewInstance(s -> { });
+        TcpDataReader reader = new TcpDataReader(storage);
+        try (ServerSocket server = new ServerSocket(0)) {
+            reader.connect("localhost:" + server.getLocalPort());
+            try (Socket socket = server.accept()) {
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                out.print("3,1000,ECG,");
+                out.print("9".repeat(3 * (1 << 20) / 2)); // never ends within the line cap
+                out.println();
+                out.println("3,2000,ECG,0.5");
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (count(storage, 3) < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            reader.disconnect();
+        }
+
+        assertEquals(1, count(storage, 3));
+        assertEquals(2000L, storage.getRecords(3, 0, Long.MAX_VALUE).get(0).getTimestamp());
+        assertEquals(1, reader.getDroppedLineCount());
+    }
+
+    private static int count(DataStorage storage, int patientId) {
+        Patient patient = storage.getPatient(patientId);
+        return patient == null ? 0 : patient.getRecords().size();
+    }
+}
@@ -5,11 +5,14 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.data_management.BinaryRecordFormat;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.WebSocketDataReader;
 
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -58,5 +61,52 @@ public class WebSocketDataReaderTest {
         assertDoesNotThrow(() -> reader.simulateOnMessage(message));
     }
 
+    @Test
+    public void testCsvMessagesParsedLikeTcpLines() {
+        WebSocketDataReader reader = new WebSocketDataReader();
+        reader.simulateOnMessage("95, 1748181000000, Saturation, 97%");
+        reader.simulateOnMessage("95,1748181000001,Alert,triggered");
+        reader.simulateOnMessage("95,1748181000002,ECG,1.5,extra");
+
+        Patient p = storage.getPatient(95);
+        assertEquals(2, p.getRecords().size());
+        assertEquals(97.0, p.getRecords().get(0).getMeasurementValue());
+        assertEquals(0.0, p.getRecords().get(1).getMeasurementValue());
+    }
+
+    @Test
+    public void testBinaryFrameStoresAllRecords() {
+        WebSocketDataReader reader = new WebSocketDataReader();
+        BinaryRecordFormat.BlockEncoder encoder = new BinaryRecordFormat.BlockEncoder();
+        for (int i = 0; i < 100; i++) {
+            encoder.add(98, "ECG", 1748181000000L + i, i / 10.0);
+            encoder.add(97, "Saturation", 1748181000000L + i, 95.0);
+        }
 
+        reader.parseAndStoreFrame(encoder.finish());
+
+        assertEquals(100, storage.getPatient(98).getRecords().size());
+        assertEquals(100, storage.getPatient(97).getRecords().size());
+        assertEquals(9.9, storage.getPatient(98).getRecords().get(99).getMeasurementValue(), 1e-9);
+    }
+
+    @Test
+    public void testCorruptBinaryFrameHandledGracefully() {
+        WebSocketDataReader reader = new WebSocketDataReader();
+        BinaryRecordFormat.BlockEncoder encoder = new BinaryRecordFormat.BlockEncoder();
+        encoder.add(96, "ECG", 1748181000000L, 0.5);
+        ByteBuffer frame = encoder.finish();
+        frame.put(frame.limit() - 1, (byte) (frame.get(frame.limit() - 1) ^ 1));
+
+        assertDoesNotThrow(() -> reader.parseAndStoreFrame(frame));
+        assertNull(storage.getPatient(96));
+
+        encoder.add(96, "ECG", 1748181000000L, 0.5);
+        ByteBuffer whole = encoder.finish();
+        // shorter than its header says
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(whole.array(), whole.limit() - 4));
+
+        assertDoesNotThrow(() -> reader.parseAndStoreFrame(truncated));
+        assertNull(storage.getPatient(96));
+    }
 }